@@ -0,0 +1,308 @@
+package sistema;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread safe cache of assets keyed by their ref. Concurrent requests for the same ref share a
+ * single load, so an asset is never loaded twice. Assets can be preloaded in the background, and
+ * once the total weight of the cached assets goes over a budget the least recently used ones are
+ * evicted. Assets already handed out stay valid, an evicted asset is simply loaded again the next
+ * time it's asked for.
+ *
+ * @param <T> The type of asset cached
+ */
+public class AssetCache<T> {
+
+    /**
+     * Loads an asset
+     *
+     * @param <T> The type of asset loaded
+     */
+    public interface Loader<T> {
+
+        /**
+         * Load an asset
+         *
+         * @param ref The ref of the asset
+         * @return The asset
+         * @throws Exception Indicates the asset couldn't be loaded
+         */
+        T load(String ref) throws Exception;
+    }
+
+    /**
+     * Works out how much of the budget an asset uses
+     *
+     * @param <T> The type of asset weighed
+     */
+    public interface Weigher<T> {
+
+        /**
+         * Weigh an asset
+         *
+         * @param asset The asset to weigh
+         * @return The weight of the asset, e.g. its size in bytes
+         */
+        long weigh(T asset);
+    }
+
+    /** A cached asset, or one being loaded */
+    private static class Entry<T> {
+        /** Completed once the asset is loaded */
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        /** The value of {@link #clock} when the asset was last used */
+        volatile long lastUse;
+
+        /** The weight of the asset, 0 until it's loaded */
+        volatile long weight;
+    }
+
+    /** Loads the assets */
+    private final Loader<T> loader;
+
+    /** Weighs the assets */
+    private final Weigher<T> weigher;
+
+    /** The cached assets */
+    private final ConcurrentHashMap<String, Entry<T>> entries = new ConcurrentHashMap<>();
+
+    /** Ticks once every time an asset is used, to order assets by how recently they were used */
+    private final AtomicLong clock = new AtomicLong();
+
+    /** The total weight of the cached assets */
+    private final AtomicLong weight = new AtomicLong();
+
+    /** The total weight the cache may hold before evicting */
+    private volatile long budget = Long.MAX_VALUE;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    /**
+     * Create a new cache
+     *
+     * @param loader Loads the assets
+     * @param weigher Weighs the assets
+     */
+    public AssetCache(Loader<T> loader, Weigher<T> weigher) {
+        this.loader = loader;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Get an asset, loading it on this thread if it isn't cached. If another thread is already
+     * loading it, wait for that load rather than starting another.
+     *
+     * @param ref The ref of the asset
+     * @return The asset
+     * @throws AssetLoadException Indicates the asset couldn't be loaded
+     */
+    public T get(String ref) {
+        Entry<T> entry = entries.get(ref);
+
+        if (entry == null) {
+            Entry<T> created = new Entry<>();
+            entry = entries.putIfAbsent(ref, created);
+
+            if (entry == null) {
+                misses.increment();
+                load(ref, created);
+                return join(ref, created);
+            }
+        }
+
+        hits.increment();
+        entry.lastUse = clock.incrementAndGet();
+        return join(ref, entry);
+    }
+
+    /**
+     * Load assets in the background. Assets already cached, or already being loaded, aren't loaded again.
+     *
+     * @param refs The refs of the assets
+     * @param executor The executor to load them on
+     * @return Completed once every asset is loaded, exceptionally if any failed to
+     */
+    public CompletableFuture<Void> preload(Collection<String> refs, Executor executor) {
+        List<CompletableFuture<T>> loads = new ArrayList<>();
+
+        for (String ref : refs) {
+            Entry<T> created = new Entry<>();
+            Entry<T> entry = entries.putIfAbsent(ref, created);
+
+            if (entry == null) {
+                misses.increment();
+                executor.execute(() -> load(ref, created));
+                entry = created;
+            }
+
+            loads.add(entry.future);
+        }
+
+        return CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Get every asset currently loaded
+     *
+     * @return The loaded assets
+     */
+    public List<T> values() {
+        List<T> values = new ArrayList<>();
+
+        for (Entry<T> entry : entries.values()) {
+            if (entry.future.isDone() && !entry.future.isCompletedExceptionally()) {
+                values.add(entry.future.join());
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Set the total weight the cache may hold. Going over it evicts the least recently used assets.
+     *
+     * @param budget The budget, e.g. in bytes
+     */
+    public void setBudget(long budget) {
+        this.budget = budget;
+        evict(null);
+    }
+
+    /**
+     * Get the statistics of the cache so far
+     *
+     * @return A snapshot of the statistics
+     */
+    public Stats getStats() {
+        return new Stats(
+                hits.sum(),
+                misses.sum(),
+                failures.sum(),
+                evictions.sum(),
+                loadNanos.sum(),
+                entries.size(),
+                weight.get()
+        );
+    }
+
+    private void load(String ref, Entry<T> entry) {
+        long start = System.nanoTime();
+
+        try {
+            T asset = loader.load(ref);
+
+            entry.weight = weigher.weigh(asset);
+            entry.lastUse = clock.incrementAndGet();
+            weight.addAndGet(entry.weight);
+            entry.future.complete(asset);
+
+            evict(entry);
+        } catch (Throwable e) {
+            // forget the failed load so the asset can be asked for again
+            entries.remove(ref, entry);
+            failures.increment();
+            entry.future.completeExceptionally(e);
+        } finally {
+            loadNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Evict the least recently used assets until the cache is back under budget
+     *
+     * @param keep An entry that mustn't be evicted, e.g. the one just loaded
+     */
+    private synchronized void evict(Entry<T> keep) {
+        while (weight.get() > budget) {
+            String oldestRef = null;
+            Entry<T> oldest = null;
+
+            for (Map.Entry<String, Entry<T>> candidate : entries.entrySet()) {
+                Entry<T> entry = candidate.getValue();
+
+                if (entry != keep && entry.future.isDone() && (oldest == null || entry.lastUse < oldest.lastUse)) {
+                    oldestRef = candidate.getKey();
+                    oldest = entry;
+                }
+            }
+
+            if (oldest == null) {
+                return;
+            }
+
+            if (entries.remove(oldestRef, oldest)) {
+                weight.addAndGet(-oldest.weight);
+                evictions.increment();
+            }
+        }
+    }
+
+    private T join(String ref, Entry<T> entry) {
+        try {
+            return entry.future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof AssetLoadException) {
+                throw (AssetLoadException) e.getCause();
+            }
+            throw new AssetLoadException("Failed to load: " + ref, e.getCause());
+        }
+    }
+
+    /**
+     * A snapshot of the statistics of a cache
+     */
+    public static class Stats {
+        /** The number of requests for an asset that was cached or already being loaded */
+        public final long hits;
+        /** The number of requests that had to start a load */
+        public final long misses;
+        /** The number of loads that failed */
+        public final long failures;
+        /** The number of assets evicted */
+        public final long evictions;
+        /** The total time spent loading (ns), summed over every loading thread */
+        public final long loadNanos;
+        /** The number of assets cached */
+        public final int size;
+        /** The total weight of the assets cached */
+        public final long weight;
+
+        Stats(long hits, long misses, long failures, long evictions, long loadNanos, int size, long weight) {
+            this.hits = hits;
+            this.misses = misses;
+            this.failures = failures;
+            this.evictions = evictions;
+            this.loadNanos = loadNanos;
+            this.size = size;
+            this.weight = weight;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "hits=%d misses=%d failures=%d evictions=%d load=%.1fms size=%d weight=%d",
+                    hits,
+                    misses,
+                    failures,
+                    evictions,
+                    loadNanos / 1e6,
+                    size,
+                    weight
+            );
+        }
+    }
+}
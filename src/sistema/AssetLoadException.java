@@ -0,0 +1,17 @@
+package sistema;
+
+/**
+ * Thrown when an asset, e.g. a sprite, can't be found or decoded
+ */
+public class AssetLoadException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public AssetLoadException(String message) {
+        super(message);
+    }
+
+    public AssetLoadException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
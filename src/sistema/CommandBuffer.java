@@ -0,0 +1,45 @@
+package sistema;
+
+import sistema.entities.Entity;
+
+import java.util.ArrayList;
+
+/**
+ * The changes to the game requested by a chunk of entities while they're updated in parallel. Rather
+ * than touching the shared state of the {@link Simulation} from several threads, each chunk records its
+ * requests here and the buffers are applied one after the other, in chunk order, once every chunk is
+ * done. The outcome is the same as if the entities had been updated one by one in list order.
+ */
+class CommandBuffer {
+
+    /** The entities asked to be removed, in the order they asked */
+    private final ArrayList<Entity> removals = new ArrayList<>();
+
+    /** True if game logic was requested */
+    private boolean logicRequired = false;
+
+    void removeEntity(Entity entity) {
+        removals.add(entity);
+    }
+
+    void updateLogic() {
+        logicRequired = true;
+    }
+
+    /**
+     * Apply the recorded requests to the game and empty the buffer
+     *
+     * @param simulation The game to apply them to
+     */
+    void applyTo(Simulation simulation) {
+        for (int i = 0; i < removals.size(); i++) {
+            simulation.removeEntity(removals.get(i));
+        }
+        if (logicRequired) {
+            simulation.updateLogic();
+        }
+
+        removals.clear();
+        logicRequired = false;
+    }
+}
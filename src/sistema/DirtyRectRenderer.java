@@ -0,0 +1,321 @@
+package sistema;
+
+import sistema.entities.Entity;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Draws the game by repainting only what changed since the last frame, rather than clearing the
+ * whole screen and drawing everything again. This matters most on the software rendering pipeline,
+ * where every pixel touched costs CPU time.
+ *
+ * The static background and the message layer are cached in an image of their own and only drawn
+ * again when they change. The frame is kept in a persistent image, each frame the rectangles the
+ * entities covered last frame and cover this frame are restored from the static layer and the
+ * entities touching them are drawn again, clipped to the rectangle. If the dirty area gets too large
+ * it's cheaper to just redraw everything, so the renderer falls back to a full redraw.
+ *
+ * Both cached layers are volatile images when there's a display, so they live in video memory
+ * where possible. If their contents are lost the renderer simply does a full redraw.
+ */
+public class DirtyRectRenderer {
+
+    /** The share of the screen above which a full redraw is done instead of repainting dirty rectangles */
+    private static final double FULL_REDRAW_THRESHOLD = 0.35;
+
+    /** The size of the frame */
+    private final int width;
+    private final int height;
+
+    /** The background and message layer */
+    private Image staticLayer;
+
+    /** The persistent frame the dirty rectangles are repainted into */
+    private Image frame;
+
+    /** The message the static layer was drawn with, null if it was drawn without one */
+    private String staticMessage;
+
+    /** True if the next frame must be drawn in full */
+    private boolean fullRedraw = true;
+
+    /** The rectangles covered by the entities in the last frame, four ints each: x, y, width, height */
+    private int[] previous = new int[256];
+    private int previousCount = 0;
+
+    /** The rectangles covered by the entities in this frame */
+    private int[] current = new int[256];
+    private int currentCount = 0;
+
+    /** The sprites drawn this frame, in the same order as {@link #current} */
+    private Sprite[] sprites = new Sprite[64];
+
+    /** The number of frames drawn in full, and in part */
+    private long fullFrames = 0;
+    private long partialFrames = 0;
+
+    /**
+     * Create a new renderer
+     *
+     * @param width The width of the frame
+     * @param height The height of the frame
+     */
+    public DirtyRectRenderer(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Draw a frame of the game onto a target surface
+     *
+     * @param simulation The game to draw
+     * @param alpha How far between the previous and the current tick to draw the entities, 0 to 1
+     * @param target The surface to draw onto
+     * @param targetPreserved True if the target still holds the last frame drawn onto it, so only the
+     *                        dirty rectangles need copying onto it
+     */
+    public void render(Simulation simulation, double alpha, Graphics2D target, boolean targetPreserved) {
+        if (validate()) {
+            fullRedraw = true;
+        }
+
+        // the message lives on the static layer, so redraw that layer when the message comes or goes
+        String message = simulation.isWaitingForKeyPress() ? simulation.getMessage() : null;
+        if (staticMessage == null ? message != null : !staticMessage.equals(message)) {
+            staticMessage = message;
+            fullRedraw = true;
+        }
+        if (fullRedraw) {
+            drawStaticLayer();
+        }
+
+        collect(simulation.getEntities(), alpha);
+
+        if (!fullRedraw && dirtyArea() > FULL_REDRAW_THRESHOLD * width * height) {
+            fullRedraw = true;
+        }
+
+        Graphics2D g = (Graphics2D) frame.getGraphics();
+
+        if (fullRedraw) {
+            g.drawImage(staticLayer, 0, 0, null);
+            for (int i = 0; i < currentCount; i++) {
+                sprites[i].draw(g, current[i * 4], current[i * 4 + 1]);
+            }
+        } else {
+            // first restore the background under every dirty rectangle, then draw the entities back
+            // over each one, clipped so nothing outside the dirty area is touched
+            restore(g, previous, previousCount);
+            restore(g, current, currentCount);
+            repaint(g, previous, previousCount);
+            repaint(g, current, currentCount);
+        }
+
+        g.dispose();
+
+        // then put the frame on the target, again only the dirty rectangles if we can get away with it
+        if (fullRedraw || !targetPreserved) {
+            target.drawImage(frame, 0, 0, null);
+            fullFrames++;
+        } else {
+            present(target, previous, previousCount);
+            present(target, current, currentCount);
+            partialFrames++;
+        }
+
+        fullRedraw = contentsLost();
+
+        // this frame's rectangles are the ones to clean up next frame
+        int[] swap = previous;
+        previous = current;
+        current = swap;
+        previousCount = currentCount;
+        currentCount = 0;
+    }
+
+    /**
+     * Force the next frame to be drawn in full, e.g. because the target surface was lost
+     */
+    public void invalidate() {
+        fullRedraw = true;
+    }
+
+    public long getFullFrames() {
+        return fullFrames;
+    }
+
+    public long getPartialFrames() {
+        return partialFrames;
+    }
+
+    /**
+     * Work out where every entity is drawn this frame
+     */
+    private void collect(ArrayList<Entity> entities, double alpha) {
+        currentCount = entities.size();
+
+        if (current.length < currentCount * 4) {
+            current = new int[currentCount * 8];
+        }
+        if (sprites.length < currentCount) {
+            sprites = Arrays.copyOf(sprites, currentCount * 2);
+        }
+
+        for (int i = 0; i < currentCount; i++) {
+            Entity entity = entities.get(i);
+            Sprite sprite = entity.getSprite();
+            double previousX = entity.getPreviousX();
+            double previousY = entity.getPreviousY();
+
+            current[i * 4] = (int) (previousX + (entity.getX() - previousX) * alpha);
+            current[i * 4 + 1] = (int) (previousY + (entity.getY() - previousY) * alpha);
+            current[i * 4 + 2] = sprite.getWidth();
+            current[i * 4 + 3] = sprite.getHeight();
+            sprites[i] = sprite;
+        }
+    }
+
+    private long dirtyArea() {
+        long area = 0;
+
+        for (int i = 0; i < previousCount; i++) {
+            area += (long) previous[i * 4 + 2] * previous[i * 4 + 3];
+        }
+        for (int i = 0; i < currentCount; i++) {
+            area += (long) current[i * 4 + 2] * current[i * 4 + 3];
+        }
+
+        return area;
+    }
+
+    /**
+     * Copy the static layer back over a set of rectangles
+     */
+    private void restore(Graphics2D g, int[] rects, int count) {
+        for (int i = 0; i < count; i++) {
+            int x1 = Math.max(0, rects[i * 4]);
+            int y1 = Math.max(0, rects[i * 4 + 1]);
+            int x2 = Math.min(width, rects[i * 4] + rects[i * 4 + 2]);
+            int y2 = Math.min(height, rects[i * 4 + 1] + rects[i * 4 + 3]);
+
+            if (x1 < x2 && y1 < y2) {
+                g.drawImage(staticLayer, x1, y1, x2, y2, x1, y1, x2, y2, null);
+            }
+        }
+    }
+
+    /**
+     * Draw every entity touching each of a set of rectangles, clipped to the rectangle
+     */
+    private void repaint(Graphics2D g, int[] rects, int count) {
+        for (int r = 0; r < count; r++) {
+            int rx = rects[r * 4];
+            int ry = rects[r * 4 + 1];
+            int rw = rects[r * 4 + 2];
+            int rh = rects[r * 4 + 3];
+
+            g.setClip(rx, ry, rw, rh);
+
+            for (int i = 0; i < currentCount; i++) {
+                int x = current[i * 4];
+                int y = current[i * 4 + 1];
+
+                if (x < rx + rw && rx < x + current[i * 4 + 2] && y < ry + rh && ry < y + current[i * 4 + 3]) {
+                    sprites[i].draw(g, x, y);
+                }
+            }
+        }
+
+        g.setClip(null);
+    }
+
+    /**
+     * Copy a set of rectangles of the frame onto the target
+     */
+    private void present(Graphics2D target, int[] rects, int count) {
+        for (int i = 0; i < count; i++) {
+            int x1 = Math.max(0, rects[i * 4]);
+            int y1 = Math.max(0, rects[i * 4 + 1]);
+            int x2 = Math.min(width, rects[i * 4] + rects[i * 4 + 2]);
+            int y2 = Math.min(height, rects[i * 4 + 1] + rects[i * 4 + 3]);
+
+            if (x1 < x2 && y1 < y2) {
+                target.drawImage(frame, x1, y1, x2, y2, x1, y1, x2, y2, null);
+            }
+        }
+    }
+
+    private void drawStaticLayer() {
+        Graphics2D g = (Graphics2D) staticLayer.getGraphics();
+
+        g.setColor(Color.black);
+        g.fillRect(0, 0, width, height);
+
+        if (staticMessage != null) {
+            Simulation.drawMessage(g, staticMessage);
+        }
+
+        g.dispose();
+    }
+
+    /**
+     * Make sure both cached layers exist and still hold their contents
+     *
+     * @return True if either had to be created or lost its contents, so everything must be redrawn
+     */
+    private boolean validate() {
+        // a restored layer is still usable but its contents are gone, an incompatible one has to be
+        // created again. Either way the whole frame must be redrawn
+        int staticState = validate(staticLayer);
+        if (staticState == VolatileImage.IMAGE_INCOMPATIBLE) {
+            staticLayer = createLayer();
+        }
+
+        int frameState = validate(frame);
+        if (frameState == VolatileImage.IMAGE_INCOMPATIBLE) {
+            frame = createLayer();
+        }
+
+        return staticState != VolatileImage.IMAGE_OK || frameState != VolatileImage.IMAGE_OK;
+    }
+
+    /**
+     * Validate a cached layer against the screen, once
+     *
+     * @param image The layer, null if it hasn't been created yet
+     * @return The result of the validation, {@link VolatileImage#IMAGE_INCOMPATIBLE} if there's no layer yet
+     */
+    private int validate(Image image) {
+        if (image == null) {
+            return VolatileImage.IMAGE_INCOMPATIBLE;
+        }
+        if (image instanceof VolatileImage) {
+            return ((VolatileImage) image).validate(configuration());
+        }
+
+        return VolatileImage.IMAGE_OK;
+    }
+
+    private boolean contentsLost() {
+        return (staticLayer instanceof VolatileImage && ((VolatileImage) staticLayer).contentsLost())
+                || (frame instanceof VolatileImage && ((VolatileImage) frame).contentsLost());
+    }
+
+    private Image createLayer() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+
+        return configuration().createCompatibleVolatileImage(width, height);
+    }
+
+    private GraphicsConfiguration configuration() {
+        return GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice()
+                .getDefaultConfiguration();
+    }
+}
@@ -0,0 +1,56 @@
+package sistema;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces the rendering loop to a target frame rate. Sleeping alone is too coarse on most platforms
+ * (a sleep of 1ms can easily take 2ms or more), while spinning alone burns a whole core. So the
+ * pacer parks the thread until it's close to the deadline and then spins for the last stretch.
+ */
+public class FramePacer {
+
+    /** How long before the deadline we stop parking and start spinning (ns) */
+    private static final long SPIN_THRESHOLD = 1500000L;
+
+    /** The length of a frame (ns), 0 if frames aren't paced at all */
+    private final long frameNanos;
+
+    /** The time at which the next frame is due */
+    private long nextFrame;
+
+    /**
+     * Create a new pacer
+     *
+     * @param framesPerSecond The target frame rate, 0 to not wait at all
+     */
+    public FramePacer(int framesPerSecond) {
+        this.frameNanos = framesPerSecond > 0 ? 1000000000L / framesPerSecond : 0;
+        this.nextFrame = System.nanoTime() + frameNanos;
+    }
+
+    /**
+     * Wait until the next frame is due
+     */
+    public void waitForNextFrame() {
+        if (frameNanos == 0) {
+            return;
+        }
+
+        long remaining;
+        while ((remaining = nextFrame - System.nanoTime()) > SPIN_THRESHOLD) {
+            LockSupport.parkNanos(remaining - SPIN_THRESHOLD);
+        }
+
+        while (nextFrame - System.nanoTime() > 0) {
+            Thread.onSpinWait();
+        }
+
+        // schedule the next frame from the deadline rather than from now so we don't drift, unless
+        // we've fallen more than a frame behind in which case there's no point trying to catch up
+        nextFrame += frameNanos;
+        long now = System.nanoTime();
+        if (now - nextFrame > frameNanos) {
+            nextFrame = now + frameNanos;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package sistema;
+
+import sistema.entities.Entity;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A copy of everything the renderer needs to draw one frame, so the render thread never has to touch
+ * the live entities the simulation thread is updating. Snapshots are reused through a
+ * {@link TripleBuffer}, so the arrays only grow and are never reallocated once big enough.
+ */
+public class FrameSnapshot {
+
+    /** The number of entities in the snapshot */
+    private int count;
+
+    /** The location of each entity at the start of the tick */
+    private double[] previousX = new double[64];
+    private double[] previousY = new double[64];
+
+    /** The location of each entity at the end of the tick */
+    private double[] x = new double[64];
+    private double[] y = new double[64];
+
+    /** The sprite of each entity */
+    private Sprite[] sprites = new Sprite[64];
+
+    /** True if the game was waiting for a key press */
+    private boolean waitingForKeyPress;
+
+    /** The message to display while waiting for a key press */
+    private String message;
+
+    /** The numbers shown on the HUD */
+    private int score;
+    private int highScore;
+    private int wave;
+    private int lives;
+
+    /** The time the snapshot was taken at (ns) */
+    private long time;
+
+    /**
+     * Fill the snapshot in from the current state of the game
+     *
+     * @param entities The entities to copy
+     * @param waitingForKeyPress True if the game is waiting for a key press
+     * @param message The message to display while waiting
+     */
+    public void capture(List<Entity> entities, boolean waitingForKeyPress, String message) {
+        count = entities.size();
+
+        if (x.length < count) {
+            int capacity = count * 2;
+            previousX = Arrays.copyOf(previousX, capacity);
+            previousY = Arrays.copyOf(previousY, capacity);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            sprites = Arrays.copyOf(sprites, capacity);
+        }
+
+        for (int i = 0; i < count; i++) {
+            Entity entity = entities.get(i);
+
+            previousX[i] = entity.getPreviousX();
+            previousY[i] = entity.getPreviousY();
+            x[i] = entity.getX();
+            y[i] = entity.getY();
+            sprites[i] = entity.getSprite();
+        }
+
+        this.waitingForKeyPress = waitingForKeyPress;
+        this.message = message;
+        this.time = System.nanoTime();
+    }
+
+    /**
+     * Fill in the numbers shown on the HUD
+     *
+     * @param score The score of the current game
+     * @param highScore The best score so far
+     * @param wave The wave being played
+     * @param lives The lives left
+     */
+    public void captureCounters(int score, int highScore, int wave, int lives) {
+        this.score = score;
+        this.highScore = highScore;
+        this.wave = wave;
+        this.lives = lives;
+    }
+
+    /**
+     * Draw the entities of the snapshot
+     *
+     * @param g The graphics context on which to draw
+     * @param alpha How far between the start and the end of the tick to draw the entities, 0 to 1
+     * @param batch The batch used to group the sprites by atlas
+     */
+    public void draw(Graphics g, double alpha, SpriteBatch batch) {
+        for (int i = 0; i < count; i++) {
+            batch.add(
+                    sprites[i],
+                    (int) (previousX[i] + (x[i] - previousX[i]) * alpha),
+                    (int) (previousY[i] + (y[i] - previousY[i]) * alpha)
+            );
+        }
+
+        batch.flush(g);
+    }
+
+    public boolean isWaitingForKeyPress() {
+        return waitingForKeyPress;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getHighScore() {
+        return highScore;
+    }
+
+    public int getWave() {
+        return wave;
+    }
+
+    public int getLives() {
+        return lives;
+    }
+
+    public long getTime() {
+        return time;
+    }
+}
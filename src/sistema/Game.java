@@ -1,9 +1,9 @@
 package sistema;
 
-import sistema.entities.AlienEntity;
-import sistema.entities.Entity;
-import sistema.entities.ShipEntity;
-import sistema.entities.ShotEntity;
+import sistema.hud.Hud;
+import sistema.metrics.Metrics;
+import sistema.metrics.MetricsOverlay;
+import sistema.replay.InputReplayer;
 
 import javax.swing.*;
 import java.awt.*;
@@ -12,7 +12,6 @@ import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferStrategy;
-import java.util.ArrayList;
 
 public class Game extends Canvas {
 
@@ -20,40 +19,50 @@ public class Game extends Canvas {
     private BufferStrategy strategy;
 
     /** True if the game is currently "running", i.e. the game loop is looping */
-    private boolean gameRunning = true;
+    private volatile boolean gameRunning = true;
 
-    /** The list of all the entities that exists in our game */
-    private ArrayList<Entity> entities = new ArrayList<>();
+    /** The simulation holding the entities and the rules of the game */
+    private final Simulation simulation = new Simulation();
 
-    /**  The list of entities that need to be removed from the game this loop */
-    private ArrayList<Entity> removeList = new ArrayList<>();
+    /** The key events waiting to be applied by the simulation */
+    private final InputQueue inputQueue = new InputQueue(256);
 
-    /** The entity representing the player */
-    private Entity ship;
+    /** The number of key presses we've had while waiting for an "any key press */
+    private int pressCount = 1;
 
-    /* The speed at which the player's ship should move (pixels/sec) */
-    private double moveSpeed = 300;
+    /** The log the player's input is replayed from, null when playing live */
+    private InputReplayer replay;
 
-    /**  The time at which the player last fired a shot */
-    private long lastFire = 0;
+    /** The number of simulation ticks per second in the fixed timestep loop, 0 to use the variable step loop */
+    private int ticksPerSecond = 0;
 
-    /**  The interval between our players shot (ms) */
-    private long firingInterval = 500;
+    /** The number of frames per second the fixed timestep loop renders at, 0 for as fast as possible */
+    private int framesPerSecond = 0;
 
-    /** True if we're holding up game play until a key has been pressed */
-    private boolean waitingForKeyPress = true;
+    /** True if the simulation and the rendering run on separate threads */
+    private boolean threaded = false;
 
-    /**  True if game logic needs to be applied this loop, normally as a result of a game event */
-    private boolean logicRequiredThisLoop = false;
+    /** The frames handed from the simulation thread to the render thread in the threaded loop */
+    private final TripleBuffer<FrameSnapshot> snapshots = new TripleBuffer<>(
+            new FrameSnapshot(),
+            new FrameSnapshot(),
+            new FrameSnapshot()
+    );
 
-    private boolean leftPressed = false;
-    private boolean rightPressed = false;
-    private boolean firePressed = false;
+    /** The batch the render thread draws snapshots through in the threaded loop */
+    private final SpriteBatch batch = new SpriteBatch();
 
-    /** The message to display which waiting for a key press */
-    private String message = "";
+    /** Repaints only the parts of the screen that changed, null to redraw the whole screen every frame */
+    private DirtyRectRenderer dirtyRenderer;
 
-    private int alienCount;
+    /** The renderer drawing the frames in software, null to draw them with Java2D */
+    private SoftwareRenderer softwareRenderer;
+
+    /** The score, wave, lives and frame rate drawn over the game, null to not show them */
+    private Hud hud;
+
+    /** The frame time metrics drawn over the game, null to not show them */
+    private MetricsOverlay overlay;
 
     public Game() {
         // create a frame to contain our game
@@ -62,11 +71,11 @@ public class Game extends Canvas {
         // get hold the content of the frame and set up the resolution of the game
         JPanel panel = (JPanel) container.getContentPane();
 
-        panel.setPreferredSize(new Dimension(800, 600));
+        panel.setPreferredSize(new Dimension(Simulation.WIDTH, Simulation.HEIGHT));
         panel.setLayout(null);
 
         // setup our canvas size and put it into the content of the frame
-        setBounds(0, 0, 800, 600);
+        setBounds(0, 0, Simulation.WIDTH, Simulation.HEIGHT);
         panel.add(this);
 
         // Tell AWT not to bother repainting our canvas since we're going to do that our self in accelerated mode
@@ -96,266 +105,428 @@ public class Game extends Canvas {
         createBufferStrategy(2);
         strategy = getBufferStrategy();
 
-        initEntities();
+        // pack every sprite loaded so far into one atlas, so a frame is drawn from a single image
+        SpriteStore.get().getSprite("sprites/shot.gif");
+        SpriteStore.get().buildAtlas();
     }
 
+    /**
+     * Run the game using the selected loop, either the variable step loop or the fixed timestep one
+     */
     public void gameLoop() {
+        if (threaded) {
+            threadedLoop();
+        } else if (ticksPerSecond > 0) {
+            fixedStepLoop();
+        } else {
+            variableStepLoop();
+        }
+    }
+
+    /**
+     * The classic loop, the simulation is advanced by however long the last loop took and the
+     * result drawn straight away
+     */
+    private void variableStepLoop() {
 
-        long lastLoopTime = System.currentTimeMillis();
+        long lastLoopTime = System.nanoTime();
 
         while (gameRunning) {
+            long frameStart = Metrics.start();
+
             // work out how long its been since the last update, this
             // will be used to calculate how far the entities should
             // move this loop
-            long delta = System.currentTimeMillis() - lastLoopTime;
-            lastLoopTime = System.currentTimeMillis();
+            long now = System.nanoTime();
+            double delta = (now - lastLoopTime) / 1000000.0;
+            lastLoopTime = now;
 
-            // Get hold of a graphics context for the accelerated
-            // surface and blank it out
-            Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
-            g.setColor(Color.black);
-            g.fillRect(0, 0, 800, 600);
+            tick(delta);
+            render(1.0);
 
-            // cycle round asking each entity to move itself
-            if (!waitingForKeyPress) {
-                for (int i = 0; i < entities.size(); i++) {
-                    Entity entity = (Entity) entities.get(i);
+            // finally pause for a bit. Note: this should run us at about
+            // 100 fps but on windows this might vary each loop due to
+            // a bad implementation of timer
+            long sleepStart = Metrics.start();
+            try { Thread.sleep(10); } catch (Exception e) {}
+            Metrics.stop(Metrics.SLEEP, sleepStart);
 
-                    entity.move(delta);
-                }
-            }
+            Metrics.stop(Metrics.FRAME, frameStart);
+        }
 
-            // cycle round drawing all the entities we have in the game
-            for (int i = 0; i < entities.size(); i++) {
-                Entity entity = (Entity) entities.get(i);
+    }
 
-                entity.draw(g);
-            }
+    /**
+     * The fixed timestep loop. The simulation always advances in ticks of the same length, however
+     * fast or slow we're rendering, so physics are stable and deterministic. Real time is collected
+     * in an accumulator and spent a tick at a time, whatever is left over is used to interpolate
+     * the rendered positions between the last two ticks.
+     */
+    private void fixedStepLoop() {
+        long tickNanos = 1000000000L / ticksPerSecond;
+        double tickMillis = tickNanos / 1000000.0;
+        FramePacer pacer = new FramePacer(framesPerSecond);
 
-            // brute force collisions, compare every entity against every other entity,
-            // If any of them collide notify both entities that the collision has occurred
-            for (int p = 0; p < entities.size(); p++) {
-                for (int s = p + 1; s < entities.size(); s++) {
-                    Entity me = (Entity) entities.get(p);
-                    Entity him = (Entity) entities.get(s);
+        long lastLoopTime = System.nanoTime();
+        long accumulator = 0;
 
-                    if (me.collidesWith(him)) {
-                        me.collidedWith(him);
-                        him.collidedWith(me);
-                    }
-                }
+        while (gameRunning) {
+            long frameStart = Metrics.start();
+            long now = System.nanoTime();
+
+            // don't try to catch up on more than a quarter of a second, e.g. after the window was dragged
+            accumulator += Math.min(now - lastLoopTime, 250000000L);
+            lastLoopTime = now;
+
+            while (accumulator >= tickNanos) {
+                tick(tickMillis);
+                accumulator -= tickNanos;
             }
 
-            entities.removeAll(removeList);
-            removeList.clear();
+            render((double) accumulator / tickNanos);
 
-            // if a game event has indicated that game logic should be resolved, cycle round every entity requesting
-            // that their personal logic should be considered.
-            if (logicRequiredThisLoop) {
-                for (int i = 0; i < entities.size(); i++) {
-                    Entity entity = (Entity) entities.get(i);
-                    entity.doLogic();
-                }
+            long sleepStart = Metrics.start();
+            pacer.waitForNextFrame();
+            Metrics.stop(Metrics.SLEEP, sleepStart);
 
-                logicRequiredThisLoop = false;
-            }
+            Metrics.stop(Metrics.FRAME, frameStart);
+        }
+    }
 
-            // if we're waiting for an "any key" press then draw the current message
-            if (waitingForKeyPress) {
-                g.setColor(Color.white);
-                g.drawString(
-                        message,
-                        (800 - g.getFontMetrics().stringWidth(message)) / 2
-                        ,300
-                );
-                g.drawString(
-                        "Press any key",
-                        (800 - g.getFontMetrics().stringWidth("Press any key")) / 2,
-                        300
+    /**
+     * The threaded loop. The simulation runs at a fixed tick rate on a thread of its own and
+     * publishes a {@link FrameSnapshot} after every tick, while this thread draws the latest
+     * snapshot. Neither waits on the other, so a slow buffer flip no longer stalls the game logic.
+     */
+    private void threadedLoop() {
+        int tickRate = ticksPerSecond > 0 ? ticksPerSecond : 120;
+        long tickNanos = 1000000000L / tickRate;
+
+        Thread simulationThread = new Thread(() -> {
+            double tickMillis = tickNanos / 1000000.0;
+            FramePacer pacer = new FramePacer(tickRate);
+
+            while (gameRunning) {
+                tick(tickMillis);
+
+                snapshots.getBack().capture(
+                        simulation.getEntities(),
+                        simulation.isWaitingForKeyPress(),
+                        simulation.getMessage()
                 );
+                if (hud != null) {
+                    snapshots.getBack().captureCounters(
+                            simulation.getScore(),
+                            simulation.getHighScore(),
+                            simulation.getWaveNumber(),
+                            simulation.getLives()
+                    );
+                }
+                snapshots.publish();
+
+                pacer.waitForNextFrame();
             }
+        }, "simulation");
 
-            // finally, we've completed drawing so clear up the graphics
-            // and flip the buffer over
-            g.dispose();
-            strategy.show();
+        simulationThread.setDaemon(true);
+        simulationThread.start();
+
+        FramePacer pacer = new FramePacer(framesPerSecond);
 
+        while (gameRunning) {
+            long frameStart = Metrics.start();
+            FrameSnapshot snapshot = snapshots.read();
 
-            // resolve the movement of the ship. First assume the ship isn't moving.
-            //If either cursor key is pressed then update the movement appropriately
-            ship.setHorizontalMovement(0.0);
+            // interpolate on how long it's been since the tick the snapshot holds finished
+            double alpha = Math.min(1.0, (double) (System.nanoTime() - snapshot.getTime()) / tickNanos);
 
-            if ((leftPressed) && (!rightPressed)) {
-                ship.setHorizontalMovement(-moveSpeed);
-            } else if ((rightPressed) && (!leftPressed)) {
-                ship.setHorizontalMovement(moveSpeed);
-            }
+            long start = Metrics.start();
+            Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+            g.setColor(Color.black);
+            g.fillRect(0, 0, Simulation.WIDTH, Simulation.HEIGHT);
 
-            // if we're pressing fire, attempt to fire
-            if (firePressed) {
-                tryToFire();
+            snapshot.draw(g, alpha, batch);
+            if (snapshot.isWaitingForKeyPress()) {
+                Simulation.drawMessage(g, snapshot.getMessage());
+            }
+            if (hud != null) {
+                hud.update(snapshot.getScore(), snapshot.getHighScore(), snapshot.getWave(), snapshot.getLives());
+                hud.draw(g);
+            }
+            if (overlay != null) {
+                overlay.draw(g);
             }
 
-            // finally pause for a bit. Note: this should run us at about
-            // 100 fps but on windows this might vary each loop due to
-            // a bad implementation of timer
-            try { Thread.sleep(10); } catch (Exception e) {}
-        }
+            g.dispose();
+            Metrics.stop(Metrics.DRAW, start);
 
-    }
+            start = Metrics.start();
+            strategy.show();
+            Metrics.stop(Metrics.SHOW, start);
 
-    private void initEntities() {
-        // create the player ship and place it roughly in the center of screen
-        ship = new ShipEntity(this, "sprites/ship.gif", 370, 550);
-        entities.add(ship);
-
-        // create a block of aliens (5 rows, by 12 aliens, spaced evenly)
-        alienCount = 0;
-        for (int row = 0; row < 5; row++) {
-            for (int column = 0; column < 12; column++) {
-                Entity alien = new AlienEntity(
-                        this,
-                        "sprites/alien.gif",
-                        100 + (column * 50),
-                        (50) + row * 30
-                );
+            start = Metrics.start();
+            pacer.waitForNextFrame();
+            Metrics.stop(Metrics.SLEEP, start);
 
-                entities.add(alien);
-                alienCount++;
-            }
+            Metrics.stop(Metrics.FRAME, frameStart);
         }
     }
 
-    public void removeEntity(Entity entity) {
-        removeList.add(entity);
-    }
+    /**
+     * Apply the player's input and advance the simulation by one step
+     *
+     * @param delta The length of the step in milliseconds
+     */
+    private void tick(double delta) {
+        // while a replay is running, the key events are ignored and the recorded input used instead
+        long start = Metrics.start();
+        if (replay != null && replay.hasNext()) {
+            simulation.applyInputState(replay.next());
+            inputQueue.clear();
+        } else {
+            replay = null;
+            processInput();
+        }
+        Metrics.stop(Metrics.INPUT, start);
 
-    public void updateLogic() {
-        logicRequiredThisLoop = true;
+        start = Metrics.start();
+        simulation.tick(delta);
+        Metrics.stop(Metrics.TICK, start);
     }
 
-    private class KeyInputHandler extends KeyAdapter {
-
-        /** The number of key presses we've had while waiting for an "any key press */
-        private int pressCount = 1;
-
-        public void  keyPressed(KeyEvent e) {
-
-            //if we're waiting for an "any key" typed then we don't waitn to do anything with just a "press"
-            if (waitingForKeyPress) {
-                return;
-            }
+    /**
+     * Draw the current state of the game and flip the buffer over
+     *
+     * @param alpha How far between the previous and the current tick to draw the entities, 0 to 1
+     */
+    private void render(double alpha) {
+        // Get hold of a graphics context for the accelerated surface and draw the game onto it
+        long start = Metrics.start();
+        Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+
+        // the HUD is painted over every frame, but when a number changes the old digits have to be
+        // cleared away too, so the dirty renderer redraws the whole frame
+        boolean hudChanged = hud != null && hud.update(simulation);
+        if (hudChanged && dirtyRenderer != null) {
+            dirtyRenderer.invalidate();
+        }
 
-            if (e.getKeyCode() == KeyEvent.VK_LEFT) {
-                leftPressed = true;
-            }
-            if (e.getKeyCode() == KeyEvent.VK_RIGHT) {
-                rightPressed = true;
+        if (softwareRenderer != null) {
+            // the frame is drawn into memory on the CPU and put on screen in one go
+            softwareRenderer.render(simulation, alpha);
+            if (hud != null) {
+                hud.draw(softwareRenderer.getPixels(), Simulation.WIDTH, Simulation.HEIGHT);
             }
-            if (e.getKeyCode() == KeyEvent.VK_SPACE) {
-                firePressed = true;
+            g.drawImage(softwareRenderer.getImage(), 0, 0, null);
+        } else if (dirtyRenderer != null) {
+            // a blitting strategy keeps the back buffer between frames, a flipping one hands us an
+            // older frame, so only the former can be patched up with the dirty rectangles. The overlay
+            // isn't part of the frame either, so it has to be painted over in full
+            boolean preserved = !strategy.getCapabilities().isPageFlipping() && overlay == null;
+            dirtyRenderer.render(simulation, alpha, g, preserved);
+
+            // if the back buffer was lost and restored while we drew, it has to be drawn in full
+            if (strategy.contentsRestored()) {
+                dirtyRenderer.invalidate();
+                dirtyRenderer.render(simulation, alpha, g, false);
             }
+        } else {
+            simulation.draw(g, alpha);
         }
 
-        public void keyReleased(KeyEvent e) {
+        if (hud != null && softwareRenderer == null) {
+            hud.draw(g);
+        }
+        if (overlay != null) {
+            overlay.draw(g);
+        }
 
-            //if we're waiting for an "any key" typed then we don't waitn to do anything with just a "released"
-            if (waitingForKeyPress) {
-                return;
-            }
+        // finally, we've completed drawing so clear up the graphics
+        // and flip the buffer over
+        g.dispose();
+        Metrics.stop(Metrics.DRAW, start);
 
-            if (e.getKeyCode() == KeyEvent.VK_LEFT) {
-                leftPressed = false;
-            }
-            if (e.getKeyCode() == KeyEvent.VK_RIGHT) {
-                rightPressed = false;
-            }
-            if (e.getKeyCode() == KeyEvent.VK_SPACE) {
-                firePressed = false;
-            }
-        }
+        start = Metrics.start();
+        strategy.show();
+        Metrics.stop(Metrics.SHOW, start);
+    }
 
-        public void keyTyped(KeyEvent e) {
+    /**
+     * Get the simulation this game displays
+     *
+     * @return The simulation of the game
+     */
+    public Simulation getSimulation() {
+        return simulation;
+    }
 
-            if (waitingForKeyPress) {
-                if (pressCount == 1) {
-                    waitingForKeyPress = false;
-                    startGame();
-                    pressCount = 0;
-                } else {
-                    pressCount++;
-                }
-            }
+    /**
+     * Switch to the fixed timestep loop
+     *
+     * @param ticksPerSecond The number of simulation ticks per second, e.g. 120
+     * @param framesPerSecond The number of frames to render per second, 0 for as fast as possible
+     */
+    public void setFixedTimestep(int ticksPerSecond, int framesPerSecond) {
+        this.ticksPerSecond = ticksPerSecond;
+        this.framesPerSecond = framesPerSecond;
+    }
 
-            // if we hit escape, then quit the game
-            if (e.getKeyChar() == 27) {
-                System.exit(0);
-            }
-        }
+    /**
+     * Run the simulation and the rendering on separate threads. The simulation runs at the tick rate
+     * set with {@link #setFixedTimestep(int, int)}, 120 per second if none was set.
+     *
+     * @param threaded True to use the threaded loop
+     */
+    public void setThreaded(boolean threaded) {
+        this.threaded = threaded;
+    }
 
+    /**
+     * Only repaint the parts of the screen that changed each frame instead of clearing and redrawing
+     * all of it. Not used by the threaded loop, which always draws snapshots in full.
+     *
+     * @param dirtyRendering True to repaint only the dirty rectangles
+     */
+    public void setDirtyRendering(boolean dirtyRendering) {
+        this.dirtyRenderer = dirtyRendering ? new DirtyRectRenderer(Simulation.WIDTH, Simulation.HEIGHT) : null;
     }
 
     /**
-     * Attempt to fire a shot from the player. Its called "try" since we must first check that the player
-     * can fire at this point, i.e. he/she waited long enough between shots
+     * Draw every frame into memory with the {@link SoftwareRenderer} and copy it to the screen in one
+     * go, for machines where Java2D has no hardware acceleration. Takes the place of dirty rendering,
+     * and like it isn't used by the threaded loop.
+     *
+     * @param softwareRendering True to draw the frames in software
      */
-    public void tryToFire() {
-        // check that we have awaited long enough to fire
-        if (System.currentTimeMillis() - lastFire < firingInterval) {
-            return;
-        }
+    public void setSoftwareRendering(boolean softwareRendering) {
+        this.softwareRenderer = softwareRendering ? new SoftwareRenderer(Simulation.WIDTH, Simulation.HEIGHT) : null;
+    }
 
-        // if we waited long enough, create the shot entity, and record the time.
-        lastFire = System.currentTimeMillis();
-        ShotEntity shot = new ShotEntity(
-                this,
-                "sprites/shot.gif",
-                (int) ship.getX() + 10,
-                (int) ship.getY() -30
-        );
+    /**
+     * Show the score, the high score, the wave, the lives left and the frame rate along the top of the screen
+     *
+     * @param visible True to show the HUD
+     */
+    public void setHud(boolean visible) {
+        this.hud = visible ? new Hud() : null;
+    }
 
-        entities.add(shot);
+    /**
+     * Draw the frame time metrics over the game
+     *
+     * @param overlay The overlay to draw, null to not show the metrics
+     */
+    public void setMetricsOverlay(MetricsOverlay overlay) {
+        this.overlay = overlay;
     }
 
-    public void notifyDeath() {
-        message = "Oh no! They got you, try again?";
-        waitingForKeyPress = true;
+    /**
+     * Get the number of frames per second the fixed timestep loops render at
+     *
+     * @return The frame rate, 0 for as fast as possible
+     */
+    public int getFramesPerSecond() {
+        return framesPerSecond;
     }
 
-    public void notifyAlienKilled() {
-        // reduce the alien count, if there are none left, the player has won!
-        alienCount--;
+    /**
+     * Replay a recorded input log. The simulation is reseeded and switched to the fixed timestep
+     * loop at the recorded tick rate, once the log runs out the game carries on with live input.
+     *
+     * @param replay The log to replay
+     */
+    public void setReplay(InputReplayer replay) {
+        this.replay = replay;
 
-        if (alienCount == 0) {
-            notifyWin();
+        simulation.setSeed(replay.getSeed());
+        if (ticksPerSecond != replay.getTickRate()) {
+            setFixedTimestep(replay.getTickRate(), framesPerSecond > 0 ? framesPerSecond : 60);
         }
+    }
+
+    /**
+     * Get the number of simulation ticks per second
+     *
+     * @return The tick rate, 0 when running the variable step loop
+     */
+    public int getTicksPerSecond() {
+        return ticksPerSecond;
+    }
 
-        // if there are still some aliens left then they all need to get faster, so speed up all existing aliens
-        for (int i = 0; i < entities.size(); i++) {
-            Entity entity = (Entity) entities.get(i);
+    /**
+     * Apply the key events posted since the last tick. This runs on the thread driving the
+     * simulation, so the key state is never touched by two threads at once.
+     */
+    private void processInput() {
+        int event;
 
-            if (entity instanceof  AlienEntity) {
-                // speed up by 2%
-                entity.setHorizontalMovement((entity.getsetHorizontalMovement() * 1.02));
+        while ((event = inputQueue.poll()) != 0) {
+            int code = InputQueue.code(event);
+
+            switch (InputQueue.type(event)) {
+                case InputQueue.PRESSED:
+                    //if we're waiting for an "any key" typed then we don't waitn to do anything with just a "press"
+                    if (!simulation.isWaitingForKeyPress()) {
+                        setKey(code, true);
+                    }
+                    break;
+                case InputQueue.RELEASED:
+                    //if we're waiting for an "any key" typed then we don't waitn to do anything with just a "released"
+                    if (!simulation.isWaitingForKeyPress()) {
+                        setKey(code, false);
+                    }
+                    break;
+                case InputQueue.TYPED:
+                    if (simulation.isWaitingForKeyPress()) {
+                        if (pressCount == 1) {
+                            simulation.startGame();
+                            pressCount = 0;
+                        } else {
+                            pressCount++;
+                        }
+                    }
+                    break;
+                default:
+                    break;
             }
         }
     }
 
-    public void notifyWin() {
-        message = "Well done! You Win!";
-        waitingForKeyPress = true;
+    private void setKey(int keyCode, boolean pressed) {
+        if (keyCode == KeyEvent.VK_LEFT) {
+            simulation.setLeftPressed(pressed);
+        }
+        if (keyCode == KeyEvent.VK_RIGHT) {
+            simulation.setRightPressed(pressed);
+        }
+        if (keyCode == KeyEvent.VK_SPACE) {
+            simulation.setFirePressed(pressed);
+        }
     }
 
-    private void startGame() {
-        // clear out any existing entities and initialise a new set
-        entities.clear();
-        initEntities();
+    /**
+     * Forwards the key events from the AWT event thread to the {@link InputQueue}, the simulation
+     * applies them at the start of its next tick
+     */
+    private class KeyInputHandler extends KeyAdapter {
 
+        public void  keyPressed(KeyEvent e) {
+            inputQueue.post(InputQueue.PRESSED, e.getKeyCode());
+        }
+
+        public void keyReleased(KeyEvent e) {
+            inputQueue.post(InputQueue.RELEASED, e.getKeyCode());
+        }
+
+        public void keyTyped(KeyEvent e) {
+            inputQueue.post(InputQueue.TYPED, e.getKeyChar());
+
+            // if we hit escape, then quit the game
+            if (e.getKeyChar() == 27) {
+                System.exit(0);
+            }
+        }
 
-        // blank out any keyboard settings we might currently have
-        leftPressed = false;
-        rightPressed = false;
-        firePressed = false;
     }
 
 }
@@ -0,0 +1,196 @@
+package sistema;
+
+import sistema.level.Wave;
+import sistema.metrics.Metrics;
+import sistema.metrics.MetricsReporter;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs the game without a display, e.g. on a CI box. The simulation is ticked at a fixed rate as
+ * fast as it will go, optionally drawing every frame into an offscreen image, and the number of
+ * ticks per second is reported at the end. Whenever the game ends it's restarted straight away.
+ *
+ * Configured with -Dheadless.ticks (default 10000), -Dheadless.tickrate (default 120),
+ * -Dheadless.render=true to draw each frame with Java2D or -Dheadless.render=soft to draw it with the
+ * {@link SoftwareRenderer}, -Dheadless.video=<file> to also write the software rendered frames to a
+ * file as raw 24 bit RGB, -Dsprites.cache=<file> to keep the decoded sprites on disk between runs,
+ * -Dentities.parallel=true to update the entities on every core, -Dcollisions.swept=true to find
+ * collisions along the entities' paths (worth it at low tick rates) and -Dwave=<file> to play a
+ * custom wave. With -Dmetrics=true the per-phase frame times are printed at the end as well, and
+ * written to -Dmetrics.csv=<file> if given.
+ */
+public class Headless {
+
+    /** The simulation being run */
+    private final Simulation simulation;
+
+    /** The image frames are drawn into with Java2D, null if they're drawn in software or not at all */
+    private final BufferedImage frame;
+
+    /** The renderer frames are drawn with in software, null if they're drawn with Java2D or not at all */
+    private final SoftwareRenderer renderer;
+
+    /** The stream the software rendered frames are written to, null to not keep them */
+    private OutputStream video;
+
+    /**
+     * Create a new headless runner
+     *
+     * @param simulation The simulation to run
+     * @param render True to draw every frame into an offscreen image
+     */
+    public Headless(Simulation simulation, boolean render) {
+        this.simulation = simulation;
+        this.frame = render ? new BufferedImage(Simulation.WIDTH, Simulation.HEIGHT, BufferedImage.TYPE_INT_RGB) : null;
+        this.renderer = null;
+    }
+
+    /**
+     * Create a new headless runner that draws every frame in software
+     *
+     * @param simulation The simulation to run
+     * @param renderer The renderer to draw the frames with
+     */
+    public Headless(Simulation simulation, SoftwareRenderer renderer) {
+        this.simulation = simulation;
+        this.frame = null;
+        this.renderer = renderer;
+    }
+
+    /**
+     * Write every software rendered frame to a stream as raw 24 bit RGB
+     *
+     * @param video The stream to write to, null to stop writing the frames
+     */
+    public void setVideo(OutputStream video) {
+        this.video = video;
+    }
+
+    /**
+     * Run a number of ticks
+     *
+     * @param ticks The number of ticks to run
+     * @param delta The length of each tick in milliseconds
+     */
+    public void run(int ticks, double delta) throws IOException {
+        for (int i = 0; i < ticks; i++) {
+            if (simulation.isWaitingForKeyPress()) {
+                simulation.startGame();
+            }
+
+            long start = Metrics.start();
+            simulation.tick(delta);
+            Metrics.stop(Metrics.TICK, start);
+
+            if (frame != null) {
+                start = Metrics.start();
+                Graphics2D g = frame.createGraphics();
+                simulation.draw(g, 1.0);
+                g.dispose();
+                Metrics.stop(Metrics.DRAW, start);
+            } else if (renderer != null) {
+                start = Metrics.start();
+                renderer.render(simulation, 1.0);
+                Metrics.stop(Metrics.DRAW, start);
+
+                if (video != null) {
+                    renderer.writeFrame(video);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the image the last frame was drawn into
+     *
+     * @return The last frame, or null if frames aren't drawn
+     */
+    public BufferedImage getFrame() {
+        return renderer != null ? renderer.getImage() : frame;
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        // -Dsprites.cache=<file> keeps the decoded sprites on disk, so later starts don't decode them again
+        String spriteCache = System.getProperty("sprites.cache");
+        if (spriteCache != null) {
+            SpriteStore.get().setDiskCache(new SpriteDiskCache(Paths.get(spriteCache)));
+        }
+
+        long loadStart = System.nanoTime();
+        SpriteStore.get().preloadManifest("sprites/manifest.txt").join();
+        System.out.printf("sprites loaded in %.1f ms%n", (System.nanoTime() - loadStart) / 1e6);
+
+        int ticks = Integer.getInteger("headless.ticks", 10000);
+        int tickRate = Integer.getInteger("headless.tickrate", 120);
+
+        Simulation simulation = new Simulation();
+        if (Boolean.getBoolean("entities.parallel")) {
+            simulation.setPool(ForkJoinPool.commonPool());
+        }
+
+        simulation.setSweptCollisions(Boolean.getBoolean("collisions.swept"));
+
+        String wave = System.getProperty("wave");
+        if (wave != null) {
+            simulation.setWave(Wave.load(Paths.get(wave)));
+        }
+
+        String render = System.getProperty("headless.render");
+        String video = System.getProperty("headless.video");
+        Headless headless;
+        OutputStream out = null;
+
+        if ("soft".equals(render) || video != null) {
+            SoftwareRenderer renderer = new SoftwareRenderer(Simulation.WIDTH, Simulation.HEIGHT);
+            if (Boolean.getBoolean("entities.parallel")) {
+                renderer.setPool(ForkJoinPool.commonPool());
+            }
+
+            headless = new Headless(simulation, renderer);
+            if (video != null) {
+                out = new BufferedOutputStream(Files.newOutputStream(Paths.get(video)), 1 << 20);
+                headless.setVideo(out);
+            }
+        } else {
+            headless = new Headless(simulation, "true".equals(render));
+        }
+
+        String csv = System.getProperty("metrics.csv");
+        MetricsReporter reporter = null;
+        if (Metrics.ENABLED) {
+            reporter = new MetricsReporter(Long.getLong("metrics.interval", 1000), csv != null ? Paths.get(csv) : null);
+            reporter.start();
+        }
+
+        long start = System.nanoTime();
+        headless.run(ticks, 1000.0 / tickRate);
+        long elapsed = System.nanoTime() - start;
+
+        if (out != null) {
+            out.close();
+            System.out.printf("video: %dx%d rgb24 at %d fps in %s%n", Simulation.WIDTH, Simulation.HEIGHT, tickRate, video);
+        }
+
+        System.out.printf("%d ticks in %.1f ms, %.0f ticks/s%n", ticks, elapsed / 1e6, ticks * 1e9 / elapsed);
+        System.out.println("sprites: " + SpriteStore.get().getStats());
+        if (SpriteStore.get().getDiskCache() != null) {
+            System.out.println("sprite cache: " + SpriteStore.get().getDiskCache());
+        }
+
+        if (reporter != null) {
+            reporter.roll();
+            for (String line : reporter.getLast().describe(1000000000L / tickRate)) {
+                System.out.println(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package sistema;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free queue carrying key events from the AWT event thread to the thread running the
+ * simulation. It's a fixed size ring buffer for exactly one producer and one consumer. Events are
+ * packed into ints so posting one never allocates.
+ *
+ * If the simulation falls so far behind that the ring fills up, further events are dropped.
+ */
+public class InputQueue {
+
+    /** A key was pressed */
+    public static final int PRESSED = 1;
+
+    /** A key was released */
+    public static final int RELEASED = 2;
+
+    /** A key was typed */
+    public static final int TYPED = 3;
+
+    /** The events, each one the type in the top byte and the key code or character below */
+    private final int[] events;
+
+    /** The number of events ever posted, only written by the producer */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** The number of events ever taken, only written by the consumer */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Create a new queue
+     *
+     * @param capacity The maximum number of pending events, rounded up to a power of two
+     */
+    public InputQueue(int capacity) {
+        events = new int[Integer.highestOneBit(Math.max(2, capacity) - 1) << 1];
+    }
+
+    /**
+     * Post an event. Only to be called from the producer thread.
+     *
+     * @param type The type of the event, one of {@link #PRESSED}, {@link #RELEASED} or {@link #TYPED}
+     * @param code The key code or, for typed keys, the character
+     * @return True if the event was queued, false if the queue was full
+     */
+    public boolean post(int type, int code) {
+        long t = tail.get();
+
+        if (t - head.get() == events.length) {
+            return false;
+        }
+
+        events[(int) t & (events.length - 1)] = (type << 24) | (code & 0xFFFFFF);
+        tail.lazySet(t + 1);
+
+        return true;
+    }
+
+    /**
+     * Take the next event. Only to be called from the consumer thread.
+     *
+     * @return The packed event, or 0 if there are none. Use {@link #type(int)} and {@link #code(int)} to unpack it
+     */
+    public int poll() {
+        long h = head.get();
+
+        if (h == tail.get()) {
+            return 0;
+        }
+
+        int event = events[(int) h & (events.length - 1)];
+        head.lazySet(h + 1);
+
+        return event;
+    }
+
+    /**
+     * Throw away every pending event. Only to be called from the consumer thread.
+     */
+    public void clear() {
+        head.lazySet(tail.get());
+    }
+
+    public static int type(int event) {
+        return event >>> 24;
+    }
+
+    public static int code(int event) {
+        return event & 0xFFFFFF;
+    }
+}
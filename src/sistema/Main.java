@@ -1,10 +1,122 @@
 package sistema;
 
+import sistema.collision.BruteForceBroadphase;
+import sistema.level.Wave;
+import sistema.metrics.Metrics;
+import sistema.metrics.MetricsOverlay;
+import sistema.metrics.MetricsReporter;
+import sistema.replay.InputRecorder;
+import sistema.replay.InputReplayer;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
 public class Main {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        // load every sprite up front, in parallel, rather than the first time an entity needs it.
+        // -Dsprites.cache=<file> keeps the decoded sprites on disk, so later starts don't decode them again
+        String spriteCache = System.getProperty("sprites.cache");
+        if (spriteCache != null) {
+            SpriteStore.get().setDiskCache(new SpriteDiskCache(Paths.get(spriteCache)));
+        }
+
+        long loadStart = System.nanoTime();
+        SpriteStore.get().preloadManifest("sprites/manifest.txt").join();
+        System.out.printf("sprites loaded in %.1f ms%n", (System.nanoTime() - loadStart) / 1e6);
+
         Game game = new Game();
 
+        // -Dwave=<file> starts every game with a custom wave, a .txt file is compiled as it's loaded.
+        // Replays only match if they're played back with the same wave
+        String wave = System.getProperty("wave");
+        if (wave != null) {
+            game.getSimulation().setWave(Wave.load(Paths.get(wave)));
+        }
+
+        // -Dbroadphase=brute switches back to the reference O(n^2) collision sweep
+        if ("brute".equals(System.getProperty("broadphase"))) {
+            game.getSimulation().setBroadphase(new BruteForceBroadphase());
+        }
+
+        // -Dentities.parallel=true moves the entities and searches for collisions across every core
+        if (Boolean.getBoolean("entities.parallel")) {
+            game.getSimulation().setPool(ForkJoinPool.commonPool());
+        }
+
+        // -Dcollisions.pixel=true resolves collisions on the sprites' opaque pixels
+        game.getSimulation().setPixelPerfectCollisions(Boolean.getBoolean("collisions.pixel"));
+
+        // -Dcollisions.swept=true finds collisions along the entities' paths, so long ticks can't skip a hit
+        game.getSimulation().setSweptCollisions(Boolean.getBoolean("collisions.swept"));
+
+        // -Drender.batch=false draws the entities one by one rather than grouped by atlas
+        game.getSimulation().setBatchedRendering(!"false".equals(System.getProperty("render.batch")));
+
+        // -Drender.dirty=true repaints only the parts of the screen that changed each frame
+        game.setDirtyRendering(Boolean.getBoolean("render.dirty"));
+
+        // -Drender.software=true draws every frame into memory on the CPU and copies it to the screen
+        game.setSoftwareRendering(Boolean.getBoolean("render.software"));
+
+        // -Dhud=false hides the score, wave, lives and frame rate along the top of the screen
+        game.setHud(!"false".equals(System.getProperty("hud")));
+
+        // -Dloop=fixed runs the simulation at a fixed tick rate with interpolated rendering
+        // -Dloop=threaded does the same with the simulation and the rendering on separate threads
+        String loop = System.getProperty("loop");
+        if ("fixed".equals(loop) || "threaded".equals(loop)) {
+            game.setFixedTimestep(
+                    Integer.getInteger("loop.tickrate", 120),
+                    Integer.getInteger("loop.fps", 60)
+            );
+            game.setThreaded("threaded".equals(loop));
+        }
+
+        // -Dreplay.play=<file> replays a recorded game, -Dreplay.record=<file> records this one. Recording
+        // needs the fixed timestep loop, so it's switched on if it isn't already
+        String play = System.getProperty("replay.play");
+        String record = System.getProperty("replay.record");
+
+        if (play != null) {
+            game.setReplay(new InputReplayer(Paths.get(play)));
+        } else if (record != null) {
+            if (game.getTicksPerSecond() == 0) {
+                game.setFixedTimestep(120, 60);
+            }
+
+            Simulation simulation = game.getSimulation();
+            simulation.setSeed(System.nanoTime());
+
+            InputRecorder recorder = new InputRecorder(Paths.get(record), simulation.getSeed(), game.getTicksPerSecond());
+            simulation.setRecorder(recorder);
+
+            // the game quits through System.exit, so close the log on the way out
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    recorder.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close the input log: " + e.getMessage());
+                }
+            }));
+        }
+
+        // -Dmetrics=true times every phase of the loop, rolled over every -Dmetrics.interval ms (1000) and
+        // written to -Dmetrics.csv=<file> if given, -Dmetrics.overlay=true shows them over the game
+        if (Metrics.ENABLED) {
+            String csv = System.getProperty("metrics.csv");
+            MetricsReporter reporter = new MetricsReporter(
+                    Long.getLong("metrics.interval", 1000),
+                    csv != null ? Paths.get(csv) : null
+            );
+            reporter.start();
+
+            if (Boolean.getBoolean("metrics.overlay")) {
+                game.setMetricsOverlay(new MetricsOverlay(reporter, game.getFramesPerSecond()));
+            }
+        }
+
         game.gameLoop();
     }
 }
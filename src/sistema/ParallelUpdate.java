@@ -0,0 +1,97 @@
+package sistema;
+
+import sistema.entities.Entity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Moves the entities of a {@link Simulation} in parallel. The entity list is cut into chunks of
+ * {@link #CHUNK_SIZE} entities that are moved on a fork/join pool, each chunk with a
+ * {@link CommandBuffer} of its own for the removals and logic requests its entities make. Once every
+ * chunk is done the buffers are applied in chunk order on the calling thread, so the game ends up in
+ * the same state as after a sequential pass.
+ *
+ * An entity's move may only change the entity itself, anything else has to go through
+ * {@link Simulation#removeEntity(Entity)} or {@link Simulation#updateLogic()}.
+ */
+class ParallelUpdate {
+
+    /** The number of entities moved by one task */
+    static final int CHUNK_SIZE = 1024;
+
+    /** The game being updated */
+    private final Simulation simulation;
+
+    /** The pool the chunks run on */
+    private final ForkJoinPool pool;
+
+    /** The command buffer of each chunk, kept from tick to tick */
+    private final ArrayList<CommandBuffer> buffers = new ArrayList<>();
+
+    /** The command buffer of the chunk running on each thread, unset outside of a chunk */
+    private final ThreadLocal<CommandBuffer> current = new ThreadLocal<>();
+
+    ParallelUpdate(Simulation simulation, ForkJoinPool pool) {
+        this.simulation = simulation;
+        this.pool = pool;
+    }
+
+    ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Get the command buffer of the chunk being moved on this thread
+     *
+     * @return The buffer, or null if this thread isn't moving a chunk
+     */
+    CommandBuffer current() {
+        return current.get();
+    }
+
+    /**
+     * Move every entity, then apply the requests they made
+     *
+     * @param entities The entities to move
+     * @param delta The time that has elapsed in milliseconds
+     */
+    void move(List<Entity> entities, double delta) {
+        int chunks = (entities.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        while (buffers.size() < chunks) {
+            buffers.add(new CommandBuffer());
+        }
+
+        RangeTask.run(pool, 0, chunks, 1, (from, to) -> {
+            for (int chunk = from; chunk < to; chunk++) {
+                move(entities, delta, chunk);
+            }
+        });
+
+        for (int i = 0; i < chunks; i++) {
+            buffers.get(i).applyTo(simulation);
+        }
+    }
+
+    /**
+     * Move one chunk of the entities, with the chunk's command buffer as the current one
+     *
+     * @param entities The entities being moved
+     * @param delta The time that has elapsed in milliseconds
+     * @param chunk The index of the chunk
+     */
+    private void move(List<Entity> entities, double delta, int chunk) {
+        int end = Math.min(entities.size(), (chunk + 1) * CHUNK_SIZE);
+
+        current.set(buffers.get(chunk));
+        try {
+            for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+                entities.get(i).move(delta);
+            }
+        } finally {
+            current.remove();
+        }
+    }
+}
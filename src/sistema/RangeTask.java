@@ -0,0 +1,67 @@
+package sistema;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a range of indices on a fork/join pool. The range is split in half until a piece is no bigger
+ * than the grain, and each piece is handed to the body on whichever thread picks it up.
+ *
+ * Used by everything that spreads a loop over the cores: the entity chunks, the bands of the software
+ * renderer and the hosted and vectorised games.
+ */
+public class RangeTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The work done on one piece of the range
+     */
+    @FunctionalInterface
+    public interface Body {
+
+        /**
+         * Handle a piece of the range
+         *
+         * @param start The first index of the piece
+         * @param end The index just after the last one of the piece
+         */
+        void run(int start, int end);
+    }
+
+    private final int start;
+    private final int end;
+    private final int grain;
+    private final Body body;
+
+    private RangeTask(int start, int end, int grain, Body body) {
+        this.start = start;
+        this.end = end;
+        this.grain = grain;
+        this.body = body;
+    }
+
+    /**
+     * Run a range on a pool, returning once every piece of it is done
+     *
+     * @param pool The pool to run on
+     * @param start The first index of the range
+     * @param end The index just after the last one of the range
+     * @param grain The largest piece handed to the body in one go, at least 1
+     * @param body The work done on each piece
+     */
+    public static void run(ForkJoinPool pool, int start, int end, int grain, Body body) {
+        pool.invoke(new RangeTask(start, end, Math.max(1, grain), body));
+    }
+
+    @Override
+    protected void compute() {
+        if (end - start <= grain) {
+            body.run(start, end);
+            return;
+        }
+
+        int middle = (start + end) >>> 1;
+        invokeAll(new RangeTask(start, middle, grain, body), new RangeTask(middle, end, grain, body));
+    }
+}
@@ -0,0 +1,128 @@
+package sistema;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * A sprite decoded once into a plain array of RGB pixels, for the {@link SoftwareRenderer}. The
+ * sprites are drawn with bitmask transparency, so each row is also broken down into runs of opaque
+ * pixels up front: blitting a row is then one array copy per run, with no per-pixel alpha test.
+ *
+ * A raster sprite never changes once decoded, so one can be shared by every renderer on every thread.
+ */
+public class RasterSprite {
+
+    /** The size of the sprite */
+    private final int width;
+    private final int height;
+
+    /** The pixels, row by row, as 0xRRGGBB */
+    private final int[] pixels;
+
+    /** The index into {@link #runs} of the first run of each row, with one extra entry for the end of the last row */
+    private final int[] rowStart;
+
+    /** The opaque runs, two ints per run: the column it starts at and its length */
+    private final int[] runs;
+
+    /**
+     * Decode an image into a raster sprite
+     *
+     * @param image The image, fully loaded
+     */
+    public RasterSprite(Image image) {
+        width = image.getWidth(null);
+        height = image.getHeight(null);
+
+        BufferedImage argb = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = argb.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        pixels = argb.getRGB(0, 0, width, height, null, 0, width);
+
+        // a run is a stretch of pixels with any alpha at all, the sprites only use on/off transparency
+        rowStart = new int[height + 1];
+        int[] found = new int[16];
+        int count = 0;
+
+        for (int row = 0; row < height; row++) {
+            rowStart[row] = count;
+            int column = 0;
+
+            while (column < width) {
+                while (column < width && (pixels[row * width + column] >>> 24) == 0) {
+                    column++;
+                }
+                int start = column;
+                while (column < width && (pixels[row * width + column] >>> 24) != 0) {
+                    column++;
+                }
+
+                if (column > start) {
+                    if (found.length < count * 2 + 2) {
+                        found = Arrays.copyOf(found, found.length * 2);
+                    }
+                    found[count * 2] = start;
+                    found[count * 2 + 1] = column - start;
+                    count++;
+                }
+            }
+        }
+        rowStart[height] = count;
+        runs = Arrays.copyOf(found, count * 2);
+
+        // frames are plain RGB, so the alpha is dropped once the runs are known
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] &= 0xffffff;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Copy the sprite's opaque pixels into a frame, clipped to a band of rows and the frame's width
+     *
+     * @param frame The frame's pixels, row by row
+     * @param frameWidth The width of the frame
+     * @param x The x location to draw at
+     * @param y The y location to draw at
+     * @param clipTop The first row that may be drawn to
+     * @param clipBottom The row after the last that may be drawn to
+     */
+    public void blit(int[] frame, int frameWidth, int x, int y, int clipTop, int clipBottom) {
+        int top = Math.max(y, clipTop);
+        int bottom = Math.min(y + height, clipBottom);
+
+        // nothing to clip horizontally, the common case, so the runs are copied as they are
+        boolean inside = x >= 0 && x + width <= frameWidth;
+
+        for (int row = top; row < bottom; row++) {
+            int source = (row - y) * width;
+            int target = row * frameWidth + x;
+
+            for (int run = rowStart[row - y]; run < rowStart[row - y + 1]; run++) {
+                int start = runs[run * 2];
+                int length = runs[run * 2 + 1];
+
+                if (!inside) {
+                    int left = Math.max(start, -x);
+                    int right = Math.min(start + length, frameWidth - x);
+                    if (right <= left) {
+                        continue;
+                    }
+                    start = left;
+                    length = right - left;
+                }
+
+                System.arraycopy(pixels, source + start, frame, target + start, length);
+            }
+        }
+    }
+}
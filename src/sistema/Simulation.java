@@ -0,0 +1,1104 @@
+package sistema;
+
+import sistema.collision.Broadphase;
+import sistema.collision.CollisionHandler;
+import sistema.collision.UniformGridBroadphase;
+import sistema.entities.AlienEntity;
+import sistema.entities.Entity;
+import sistema.entities.EntityPool;
+import sistema.entities.EntityStore;
+import sistema.entities.Formation;
+import sistema.entities.ShipEntity;
+import sistema.entities.ShotEntity;
+import sistema.events.EventQueue;
+import sistema.events.GameEvent;
+import sistema.events.ScoreSystem;
+import sistema.hud.GlyphAtlas;
+import sistema.level.Wave;
+import sistema.metrics.Metrics;
+import sistema.replay.InputRecorder;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The state and rules of a game of space invaders: the entities, the player's input, movement,
+ * collisions and the win/death logic. It knows nothing about windows, key events or buffer
+ * strategies, so it can be driven by {@link Game} on screen or run headless, e.g. by a benchmark.
+ */
+public class Simulation {
+
+    /** The input state bit for the left cursor key */
+    public static final int INPUT_LEFT = 1;
+
+    /** The input state bit for the right cursor key */
+    public static final int INPUT_RIGHT = 2;
+
+    /** The input state bit for the fire key */
+    public static final int INPUT_FIRE = 4;
+
+    /** The input state bit set on the first tick of a new game */
+    public static final int INPUT_START = 8;
+
+    /** The magic number a saved state starts with, "SINV" */
+    private static final int STATE_MAGIC = 0x53494E56;
+
+    /** The version of the saved state format, bumped whenever it changes */
+    private static final int STATE_VERSION = 4;
+
+    /** The kinds of entity in a saved state */
+    private static final byte STATE_SHIP = 0;
+    private static final byte STATE_ALIEN = 1;
+    private static final byte STATE_SHOT = 2;
+
+    /** The lives the player starts every game with, the game ends at the first hit */
+    public static final int LIVES = 1;
+
+    /** How much faster each wave's formations start moving than the wave before */
+    private static final double WAVE_SPEED_UP = 1.1;
+
+    /** The width of the playfield in pixels */
+    public static final int WIDTH = 800;
+
+    /** The height of the playfield in pixels */
+    public static final int HEIGHT = 600;
+
+    /** The baselines of the message shown while waiting for a key press, and of the prompt under it */
+    private static final int MESSAGE_Y = 250;
+    private static final int PROMPT_Y = 300;
+
+    /** The prompt shown under the message */
+    private static final String PROMPT = "Press any key";
+
+    /** The list of all the entities that exists in our game */
+    private ArrayList<Entity> entities = new ArrayList<>();
+
+    /** The structure-of-arrays store shared by all the entities */
+    private final EntityStore entityStore;
+
+    /**  The list of entities that need to be removed from the game this loop */
+    private ArrayList<Entity> removeList = new ArrayList<>();
+
+    /** The pool the player's shots are taken from */
+    private final EntityPool<ShotEntity> shotPool = new EntityPool<>(
+            () -> new ShotEntity(this, "sprites/shot.gif", 0, 0)
+    );
+
+    /** The pools the aliens are taken from, one per sprite, so restarting a game respawns them rather than creating them again */
+    private final HashMap<String, EntityPool<AlienEntity>> alienPools = new HashMap<>();
+
+    /** The index of the formation last looked up while saving the state */
+    private int lastFormationIndex = 0;
+
+    /** The wave every game starts with */
+    private Wave wave = Wave.classic();
+
+    /** The entity representing the player */
+    private ShipEntity ship;
+
+    /* The speed at which the player's ship should move (pixels/sec) */
+    private double moveSpeed = 300;
+
+    /** The simulated time, the sum of the length of every tick so far (ms) */
+    private double time = 0;
+
+    /**  The simulated time at which the player last fired a shot */
+    private double lastFire = -500;
+
+    /**  The interval between our players shot (ms) */
+    private long firingInterval = 500;
+
+    /** True if we're holding up game play until a key has been pressed */
+    private boolean waitingForKeyPress = true;
+
+    /**  True if game logic needs to be applied this loop, normally as a result of a game event */
+    private boolean logicRequiredThisLoop = false;
+
+    private boolean leftPressed = false;
+    private boolean rightPressed = false;
+    private boolean firePressed = false;
+
+    /** The message to display which waiting for a key press */
+    private String message = "";
+
+    /** The seed the random number generator was last seeded with */
+    private long seed = System.nanoTime();
+
+    /** The random number generator all randomness in the game must come from, so runs can be replayed */
+    private Random random = new Random(seed);
+
+    /** True if a new game was started since the last tick */
+    private boolean startedThisTick = false;
+
+    /** The recorder the input of every tick is written to, null if the game isn't being recorded */
+    private InputRecorder recorder;
+
+    private int alienCount;
+
+    /** The spawn id given to the next entity added, see {@link Entity#getSpawnId()} */
+    private int nextSpawnId = 1;
+
+    /** The wave being played, counting from 1. Clearing a wave and starting again moves on to the
+     *  next, faster one, anything else goes back to the first */
+    private int waveNumber = 1;
+
+    /** The lives left in the current game */
+    private int lives = LIVES;
+
+    /** The formations the aliens move in */
+    private ArrayList<Formation> formations = new ArrayList<>();
+
+    /** The events published during a tick, handed to the systems in one batch at its end. A tick
+     *  rarely publishes more than a handful, and the queue grows if one does */
+    private final EventQueue events = new EventQueue(64);
+
+    /** The system keeping the player's score */
+    private final ScoreSystem score = new ScoreSystem();
+
+    /** The number of entities below which they're always moved sequentially, it isn't worth splitting up fewer */
+    private static final int PARALLEL_THRESHOLD = 4 * ParallelUpdate.CHUNK_SIZE;
+
+    /** Moves the entities in parallel, null to move them on the calling thread */
+    private ParallelUpdate parallelUpdate;
+
+    /** The broadphase used to find the pairs of entities that collide */
+    private Broadphase broadphase = new UniformGridBroadphase(WIDTH, HEIGHT, 64);
+
+    /** True if pairs whose bounding boxes overlap should also be tested pixel by pixel */
+    private boolean pixelPerfectCollisions = false;
+
+    /** True if collisions are found along the paths the entities took during the tick, not just where they ended up */
+    private boolean sweptCollisions = false;
+
+    /** True if entities are drawn through a {@link SpriteBatch} grouping them by atlas */
+    private boolean batchedRendering = true;
+
+    /** The batch entities are queued in while drawing */
+    private final SpriteBatch batch = new SpriteBatch();
+
+    /** Notify both entities of a pair found by the broadphase that the collision has occurred */
+    private final CollisionHandler collisionHandler = (me, him) -> {
+        // swept contacts come in the order they happened, so something already hit this tick, e.g. a
+        // shot, can't go on to hit anything later along its path
+        if (sweptCollisions && (me.isRemoved() || him.isRemoved())) {
+            return;
+        }
+
+        // the pixels can only be compared where the entities ended up, a swept contact earlier in the
+        // tick is taken on its bounding boxes
+        if (pixelPerfectCollisions && me.collidesWith(him) && !me.pixelsCollideWith(him)) {
+            return;
+        }
+
+        Metrics.count(Metrics.HITS, 1);
+        me.collidedWith(him);
+        him.collidedWith(me);
+    };
+
+    /**
+     * Create a new simulation
+     */
+    public Simulation() {
+        // a wave, the ship and its shots fit in 128 slots, so a host running thousands of games
+        // doesn't pay for room most of them never use
+        entityStore = new EntityStore(128);
+
+        events.addSystem(new WaveSystem(this));
+        events.addSystem(score);
+
+        initEntities();
+    }
+
+    /**
+     * Advance the simulation by one step: apply the player's input, move the entities, resolve
+     * collisions and apply any game logic that was requested.
+     *
+     * @param delta The length of the step in milliseconds
+     */
+    public void tick(double delta) {
+        if (recorder != null) {
+            recorder.record(getInputState());
+        }
+        startedThisTick = false;
+        time += delta;
+
+        // resolve the movement of the ship. First assume the ship isn't moving.
+        //If either cursor key is pressed then update the movement appropriately
+        ship.setHorizontalMovement(0.0);
+
+        if ((leftPressed) && (!rightPressed)) {
+            ship.setHorizontalMovement(-moveSpeed);
+        } else if ((rightPressed) && (!leftPressed)) {
+            ship.setHorizontalMovement(moveSpeed);
+        }
+
+        // if we're pressing fire, attempt to fire
+        if (firePressed) {
+            tryToFire();
+        }
+
+        // remember where everything was so the renderer can interpolate from there
+        long start = Metrics.start();
+        for (int i = 0; i < entities.size(); i++) {
+            entities.get(i).savePosition();
+        }
+
+        // move the formations, then cycle round asking each entity to move itself
+        if (!waitingForKeyPress) {
+            for (int i = 0; i < formations.size(); i++) {
+                formations.get(i).move(delta);
+            }
+
+            moveEntities(delta);
+        }
+        Metrics.stop(Metrics.MOVE, start);
+
+        start = Metrics.start();
+        resolveCollisions();
+        Metrics.stop(Metrics.COLLISION, start);
+
+        start = Metrics.start();
+        removeEntities();
+        Metrics.stop(Metrics.REMOVE, start);
+
+        // if a game event has indicated that game logic should be resolved, cycle round every entity requesting
+        // that their personal logic should be considered.
+        start = Metrics.start();
+        for (int i = 0; i < formations.size(); i++) {
+            formations.get(i).doLogic(events);
+        }
+
+        if (logicRequiredThisLoop) {
+            for (int i = 0; i < entities.size(); i++) {
+                Entity entity = (Entity) entities.get(i);
+                entity.doLogic();
+            }
+
+            logicRequiredThisLoop = false;
+        }
+
+        // finally let the systems react to everything that happened this tick
+        events.dispatch();
+        Metrics.stop(Metrics.LOGIC, start);
+
+        Metrics.set(Metrics.ENTITIES, entities.size());
+    }
+
+    /**
+     * Cycle round asking each entity to move itself
+     *
+     * @param delta The time that has elapsed in milliseconds
+     */
+    public void moveEntities(double delta) {
+        if (parallelUpdate != null && entities.size() >= PARALLEL_THRESHOLD) {
+            parallelUpdate.move(entities, delta);
+            return;
+        }
+
+        for (int i = 0; i < entities.size(); i++) {
+            Entity entity = (Entity) entities.get(i);
+
+            entity.move(delta);
+        }
+    }
+
+    /**
+     * Let the broadphase find every pair of entities that collide,
+     * If any of them collide notify both entities that the collision has occurred
+     */
+    public void resolveCollisions() {
+        broadphase.findPairs(entities, collisionHandler);
+    }
+
+    /**
+     * Take the entities that asked to be removed this loop out of the game. Each one is swapped with
+     * the last entity in the list and the list shortened, so removing an entity is O(1) however long
+     * the list is.
+     */
+    private void removeEntities() {
+        for (int i = 0; i < removeList.size(); i++) {
+            Entity entity = removeList.get(i);
+            int index = entity.getIndex();
+            Entity last = entities.remove(entities.size() - 1);
+
+            if (last != entity) {
+                entities.set(index, last);
+                last.setIndex(index);
+            }
+
+            if (entity instanceof ShotEntity) {
+                Metrics.count(Metrics.SHOTS_REMOVED, 1);
+            }
+
+            entity.setIndex(-1);
+            entity.release();
+        }
+        removeList.clear();
+    }
+
+    /**
+     * Put an entity at the end of the entity list, with a spawn id of its own
+     *
+     * @param entity The entity to add
+     */
+    private void add(Entity entity) {
+        entity.setSpawnId(nextSpawnId++);
+        entity.setIndex(entities.size());
+        entities.add(entity);
+    }
+
+    /**
+     * Draw the current state of the game
+     *
+     * @param g The graphics context on which to draw
+     * @param alpha How far between the previous and the current tick to draw the entities, 0 to 1
+     */
+    public void draw(Graphics2D g, double alpha) {
+        // blank out the playfield
+        g.setColor(Color.black);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+
+        // cycle round drawing all the entities we have in the game
+        if (batchedRendering) {
+            for (int i = 0; i < entities.size(); i++) {
+                entities.get(i).draw(batch, alpha);
+            }
+            batch.flush(g);
+        } else {
+            for (int i = 0; i < entities.size(); i++) {
+                Entity entity = (Entity) entities.get(i);
+
+                entity.draw(g, alpha);
+            }
+        }
+
+        // if we're waiting for an "any key" press then draw the current message
+        if (waitingForKeyPress) {
+            drawMessage(g, message);
+        }
+    }
+
+    /**
+     * Draw the message shown while we're waiting for a key press
+     *
+     * @param g The graphics context on which to draw
+     * @param message The message to display
+     */
+    public static void drawMessage(Graphics2D g, String message) {
+        // the text comes out of a pre-rasterized atlas rather than the font pipeline, with the
+        // message above the prompt instead of on top of it
+        GlyphAtlas atlas = GlyphAtlas.getDefault();
+        atlas.draw(g, message, (WIDTH - atlas.stringWidth(message)) / 2, MESSAGE_Y);
+        atlas.draw(g, PROMPT, (WIDTH - atlas.stringWidth(PROMPT)) / 2, PROMPT_Y);
+    }
+
+    /**
+     * Draw the message shown while we're waiting for a key press into a frame of pixels
+     *
+     * @param frame The frame's pixels, row by row, {@link #WIDTH} by {@link #HEIGHT}
+     * @param message The message to display
+     */
+    public static void drawMessage(int[] frame, String message) {
+        GlyphAtlas atlas = GlyphAtlas.getDefault();
+        atlas.draw(frame, WIDTH, HEIGHT, message, (WIDTH - atlas.stringWidth(message)) / 2, MESSAGE_Y);
+        atlas.draw(frame, WIDTH, HEIGHT, PROMPT, (WIDTH - atlas.stringWidth(PROMPT)) / 2, PROMPT_Y);
+    }
+
+    private void initEntities() {
+        // make room for the whole wave up front rather than growing as it's spawned
+        entities.ensureCapacity(wave.getAlienCount() + 16);
+        entityStore.reserve(wave.getAlienCount() + 16);
+
+        // create the player ship, for the classic wave roughly in the center of screen
+        ship = new ShipEntity(this, wave.getShipSprite(), wave.getShipX(), wave.getShipY());
+        add(ship);
+
+        // spawn the formations of aliens, row by row from their top left corner. The aliens come out
+        // of a pool per sprite, so the sprite is only looked up when an alien is first created
+        // every wave cleared in a row makes the next one start faster
+        double speedUp = 1;
+        for (int i = 1; i < waveNumber; i++) {
+            speedUp *= WAVE_SPEED_UP;
+        }
+
+        alienCount = 0;
+        for (int i = 0; i < wave.getFormationCount(); i++) {
+            int x = wave.getFormationX(i);
+            int y = wave.getFormationY(i);
+            int rows = wave.getRows(i);
+            int columns = wave.getColumns(i);
+            int spacingX = wave.getSpacingX(i);
+            int spacingY = wave.getSpacingY(i);
+
+            Formation formation = createFormation(x, y, wave.getSpeed(i) * speedUp);
+            EntityPool<AlienEntity> pool = alienPool(wave.getSprite(i));
+
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    AlienEntity alien = pool.acquire(x + column * spacingX, y + row * spacingY);
+                    alien.joinFormation(formation);
+                    add(alien);
+                }
+            }
+            alienCount += rows * columns;
+        }
+    }
+
+    /**
+     * Get the pool aliens with a sprite are taken from
+     *
+     * @param ref The reference to the sprite
+     * @return The pool
+     */
+    private EntityPool<AlienEntity> alienPool(String ref) {
+        return alienPools.computeIfAbsent(ref, key -> new EntityPool<>(() -> new AlienEntity(this, key)));
+    }
+
+    /**
+     * Release every entity, handing the pooled ones back to their pools, and forget the formations
+     */
+    private void releaseEntities() {
+        for (int i = 0; i < entities.size(); i++) {
+            entities.get(i).release();
+        }
+
+        entities.clear();
+        removeList.clear();
+        formations.clear();
+        entityStore.clear();
+    }
+
+    /**
+     * Create a new formation for aliens to join, moving left at the aliens' starting speed
+     *
+     * @param x The x location of the formation
+     * @param y The y location of the formation
+     * @return The formation
+     */
+    public Formation createFormation(double x, double y) {
+        return createFormation(x, y, -75);
+    }
+
+    /**
+     * Create a new formation for aliens to join
+     *
+     * @param x The x location of the formation
+     * @param y The y location of the formation
+     * @param dx The horizontal speed of the formation (pixels/sec)
+     * @return The formation
+     */
+    public Formation createFormation(double x, double y, double dx) {
+        Formation formation = new Formation(x, y, dx);
+        formations.add(formation);
+
+        return formation;
+    }
+
+    /**
+     * Set the wave every game starts with, from the next game on. If no game is being played the new
+     * wave is put in place straight away, so it's the one shown behind the message.
+     *
+     * @param wave The wave
+     */
+    public void setWave(Wave wave) {
+        this.wave = wave;
+
+        if (waitingForKeyPress) {
+            releaseEntities();
+            initEntities();
+        }
+    }
+
+    public Wave getWave() {
+        return wave;
+    }
+
+    /**
+     * Add an entity to the game. Aliens added this way count towards the aliens the player has to kill.
+     *
+     * @param entity The entity to add
+     */
+    public void addEntity(Entity entity) {
+        add(entity);
+
+        if (entity instanceof AlienEntity) {
+            alienCount++;
+        }
+    }
+
+    /**
+     * Set the broadphase used to find colliding entities, e.g. the brute force one as a reference
+     *
+     * @param broadphase The broadphase to use from the next loop on
+     */
+    public void setBroadphase(Broadphase broadphase) {
+        this.broadphase = broadphase;
+        broadphase.setPool(parallelUpdate != null ? parallelUpdate.getPool() : null);
+        broadphase.setSwept(sweptCollisions);
+    }
+
+    /**
+     * Move the entities and search for collisions in parallel once there are enough entities to make
+     * it worthwhile. The outcome of every tick is the same as running sequentially, so replays still match.
+     *
+     * @param pool The pool to run on, e.g. {@link ForkJoinPool#commonPool()}, null to run everything on
+     *             the calling thread
+     */
+    public void setPool(ForkJoinPool pool) {
+        parallelUpdate = pool != null ? new ParallelUpdate(this, pool) : null;
+        broadphase.setPool(pool);
+    }
+
+    /**
+     * Set whether collisions should be resolved on the opaque pixels of the sprites rather than their bounding boxes
+     *
+     * @param pixelPerfectCollisions True to test pixel masks once the bounding boxes overlap
+     */
+    public void setPixelPerfectCollisions(boolean pixelPerfectCollisions) {
+        this.pixelPerfectCollisions = pixelPerfectCollisions;
+    }
+
+    /**
+     * Set whether collisions are found along the whole path each entity took during the tick, so a
+     * shot can't jump over an alien when the ticks are long, e.g. on a slow machine or when running
+     * at a low tick rate. Contacts are then resolved in the order they happened, and an entity removed
+     * by one contact takes no part in later ones.
+     *
+     * @param sweptCollisions True to sweep
+     */
+    public void setSweptCollisions(boolean sweptCollisions) {
+        this.sweptCollisions = sweptCollisions;
+        broadphase.setSwept(sweptCollisions);
+    }
+
+    /**
+     * Set whether entities are drawn grouped by atlas through a {@link SpriteBatch}, or one by one in list order
+     *
+     * @param batchedRendering True to batch the drawing
+     */
+    public void setBatchedRendering(boolean batchedRendering) {
+        this.batchedRendering = batchedRendering;
+    }
+
+    /**
+     * Get the store the entities of this game keep their state in
+     *
+     * @return The shared entity store
+     */
+    public EntityStore getEntityStore() {
+        return entityStore;
+    }
+
+    /**
+     * Get the entities currently in the game. The list is live, it must not be modified.
+     *
+     * @return The entities in the game
+     */
+    public ArrayList<Entity> getEntities() {
+        return entities;
+    }
+
+    public boolean isWaitingForKeyPress() {
+        return waitingForKeyPress;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public int getAlienCount() {
+        return alienCount;
+    }
+
+    /**
+     * Get the wave being played
+     *
+     * @return The wave, counting from 1
+     */
+    public int getWaveNumber() {
+        return waveNumber;
+    }
+
+    /**
+     * Get the lives left in the current game
+     *
+     * @return The lives left
+     */
+    public int getLives() {
+        return lives;
+    }
+
+    /**
+     * Get the player's input as it stands, packed into the INPUT_ bits
+     *
+     * @return The input state
+     */
+    public int getInputState() {
+        return (leftPressed ? INPUT_LEFT : 0)
+                | (rightPressed ? INPUT_RIGHT : 0)
+                | (firePressed ? INPUT_FIRE : 0)
+                | (startedThisTick ? INPUT_START : 0);
+    }
+
+    /**
+     * Apply a packed input state, as recorded by {@link #getInputState()}. If it has the
+     * {@link #INPUT_START} bit a new game is started first.
+     *
+     * @param state The input state
+     */
+    public void applyInputState(int state) {
+        if ((state & INPUT_START) != 0) {
+            startGame();
+        }
+
+        leftPressed = (state & INPUT_LEFT) != 0;
+        rightPressed = (state & INPUT_RIGHT) != 0;
+        firePressed = (state & INPUT_FIRE) != 0;
+    }
+
+    /**
+     * Reseed the random number generator
+     *
+     * @param seed The new seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+        this.random = new Random(seed);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+
+    /**
+     * Record the input of every tick from now on
+     *
+     * @param recorder The recorder to write to, null to stop recording
+     */
+    public void setRecorder(InputRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public void setLeftPressed(boolean leftPressed) {
+        this.leftPressed = leftPressed;
+    }
+
+    public void setRightPressed(boolean rightPressed) {
+        this.rightPressed = rightPressed;
+    }
+
+    public void setFirePressed(boolean firePressed) {
+        this.firePressed = firePressed;
+    }
+
+    /**
+     * Queue an entity to be removed at the end of the loop. Queuing the same entity more than once,
+     * e.g. an alien hit by two shots in the same loop, only removes it once.
+     *
+     * @param entity The entity to remove
+     */
+    public void removeEntity(Entity entity) {
+        // while moving in parallel, the removal waits in the chunk's buffer until every chunk is done
+        CommandBuffer commands = parallelUpdate != null ? parallelUpdate.current() : null;
+        if (commands != null) {
+            commands.removeEntity(entity);
+            return;
+        }
+
+        if (entity.markRemoved()) {
+            removeList.add(entity);
+        }
+    }
+
+    /**
+     * Get the queue game events are published to, they're handed to the systems at the end of the tick
+     *
+     * @return The event queue
+     */
+    public EventQueue getEvents() {
+        return events;
+    }
+
+    /**
+     * Get the score of the current game
+     *
+     * @return The score
+     */
+    public int getScore() {
+        return score.getScore();
+    }
+
+    /**
+     * Get the best score of any game played so far
+     *
+     * @return The high score
+     */
+    public int getHighScore() {
+        return score.getHighScore();
+    }
+
+    public void updateLogic() {
+        CommandBuffer commands = parallelUpdate != null ? parallelUpdate.current() : null;
+        if (commands != null) {
+            commands.updateLogic();
+            return;
+        }
+
+        logicRequiredThisLoop = true;
+    }
+
+    /**
+     * Attempt to fire a shot from the player. Its called "try" since we must first check that the player
+     * can fire at this point, i.e. he/she waited long enough between shots
+     */
+    public void tryToFire() {
+        // check that we have awaited long enough to fire
+        if (time - lastFire < firingInterval) {
+            return;
+        }
+
+        // if we waited long enough, create the shot entity, and record the time.
+        lastFire = time;
+        ShotEntity shot = shotPool.acquire(
+                (int) ship.getX() + 10,
+                (int) ship.getY() -30
+        );
+
+        add(shot);
+        events.publish(GameEvent.SHOT_FIRED, (int) shot.getX(), (int) shot.getY(), 0);
+        Metrics.count(Metrics.SHOTS_SPAWNED, 1);
+    }
+
+    public void notifyDeath() {
+        lives = Math.max(0, lives - 1);
+        message = "Oh no! They got you, try again?";
+        waitingForKeyPress = true;
+    }
+
+    public void notifyAlienKilled() {
+        notifyAliensKilled(1);
+    }
+
+    /**
+     * Notification that a number of aliens were killed in one go, e.g. during one tick
+     *
+     * @param kills The number of aliens killed
+     */
+    public void notifyAliensKilled(int kills) {
+        // reduce the alien count, if there are none left, the player has won!
+        int before = alienCount;
+        alienCount -= kills;
+
+        if (before > 0 && alienCount <= 0) {
+            notifyWin();
+        }
+
+        // if there are still some aliens left then they all need to get faster, so speed up every
+        // formation by 2% for each alien killed
+        double factor = 1.02;
+        for (int i = 1; i < kills; i++) {
+            factor *= 1.02;
+        }
+
+        for (int i = 0; i < formations.size(); i++) {
+            formations.get(i).speedUp(factor);
+        }
+    }
+
+    public void notifyWin() {
+        message = "Well done! You Win!";
+        waitingForKeyPress = true;
+    }
+
+    /**
+     * Start a fresh game, i.e. the "any key" was pressed
+     */
+    public void startGame() {
+        // a wave cleared without dying moves on to the next one, anything else starts over
+        waveNumber = alienCount <= 0 && lives > 0 ? waveNumber + 1 : 1;
+        lives = LIVES;
+
+        // clear out any existing entities and initialise a new set
+        releaseEntities();
+        initEntities();
+
+        waitingForKeyPress = false;
+        startedThisTick = true;
+
+        // whatever happened in the last game is of no interest to this one
+        events.clear();
+        events.publish(GameEvent.GAME_STARTED, 0, 0, 0);
+
+        // blank out any keyboard settings we might currently have
+        leftPressed = false;
+        rightPressed = false;
+        firePressed = false;
+    }
+
+    /**
+     * Remove every entity but the player's ship, e.g. to populate the game by hand with
+     * {@link #addEntity(Entity)}
+     */
+    public void clearAliens() {
+        for (int i = 0; i < entities.size(); i++) {
+            if (entities.get(i) != ship) {
+                entities.get(i).release();
+            }
+        }
+
+        entities.clear();
+        removeList.clear();
+        formations.clear();
+        add(ship);
+        alienCount = 0;
+    }
+
+    /**
+     * Get an upper bound on the size of the saved state, to size a buffer for {@link #saveState(ByteBuffer)}
+     *
+     * @return The size in bytes
+     */
+    public int getStateSizeBound() {
+        int bound = 128 + message.length() * 3
+                + formations.size() * 25
+                + events.size() * 16
+                + entities.size() * 70
+                + 2 + ship.getSpriteRef().length() * 3;
+
+        // plus the sprite of the ship, and of every alien whose sprite differs from the one before
+        String ref = null;
+        for (int i = 0; i < entities.size(); i++) {
+            if (entities.get(i) instanceof AlienEntity) {
+                String alienRef = ((AlienEntity) entities.get(i)).getSpriteRef();
+                if (!alienRef.equals(ref)) {
+                    bound += 2 + alienRef.length() * 3;
+                    ref = alienRef;
+                }
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Write the whole state of the game to a buffer: every entity's position and speed, the
+     * formations, the aliens left, the wave and lives, the timers, the input, the score, the message
+     * and the events waiting to be dispatched. It must be called between ticks. Restoring the state and
+     * running the same input gives exactly the same game, so a state can be used to save and resume,
+     * to rewind, or to branch off several futures from one point.
+     *
+     * Positions and speeds are written as doubles so nothing is lost. The random number generator is
+     * only saved as its seed, nothing in the rules draws from it.
+     *
+     * @param out The buffer to write to, at least {@link #getStateSizeBound()} bytes must remain
+     */
+    public void saveState(ByteBuffer out) {
+        out.putInt(STATE_MAGIC);
+        out.putInt(STATE_VERSION);
+
+        out.putDouble(time);
+        out.putDouble(lastFire);
+        out.putLong(seed);
+        out.put((byte) ((waitingForKeyPress ? 1 : 0)
+                | (logicRequiredThisLoop ? 2 : 0)
+                | (startedThisTick ? 4 : 0)));
+        out.put((byte) getInputState());
+        out.putInt(alienCount);
+        out.putInt(waveNumber);
+        out.putInt(lives);
+        out.putInt(score.getScore());
+        out.putInt(score.getHighScore());
+
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        out.putShort((short) text.length);
+        out.put(text);
+
+        out.putInt(formations.size());
+        for (int i = 0; i < formations.size(); i++) {
+            Formation formation = formations.get(i);
+            out.putDouble(formation.getX());
+            out.putDouble(formation.getY());
+            out.putDouble(formation.getHorizontalMovement());
+            out.put((byte) (formation.isTurnRequested() ? 1 : 0));
+        }
+
+        out.putInt(events.size());
+        for (int event = events.first(); event != events.first() + events.size(); event++) {
+            out.putInt(events.type(event));
+            out.putInt(events.x(event));
+            out.putInt(events.y(event));
+            out.putInt(events.value(event));
+        }
+
+        out.putInt(entities.size());
+        String ref = null;
+        for (int i = 0; i < entities.size(); i++) {
+            Entity entity = entities.get(i);
+
+            if (entity == ship) {
+                out.put(STATE_SHIP);
+            } else if (entity instanceof AlienEntity) {
+                out.put(STATE_ALIEN);
+            } else if (entity instanceof ShotEntity) {
+                out.put(STATE_SHOT);
+            } else {
+                throw new IllegalStateException("Can't save an entity of type " + entity.getClass().getName());
+            }
+
+            out.putDouble(entity.getX());
+            out.putDouble(entity.getY());
+            out.putDouble(entity.getPreviousX());
+            out.putDouble(entity.getPreviousY());
+            out.putDouble(entity.getsetHorizontalMovement());
+            out.putDouble(entity.getVerticalMovement());
+
+            if (entity == ship) {
+                // a compiled wave can give the ship a sprite of its own
+                byte[] bytes = ship.getSpriteRef().getBytes(StandardCharsets.UTF_8);
+                out.putShort((short) bytes.length);
+                out.put(bytes);
+            } else if (entity instanceof AlienEntity) {
+                AlienEntity alien = (AlienEntity) entity;
+                out.putInt(formationIndex(alien.getFormation()));
+                out.putDouble(alien.getOffsetX());
+                out.putDouble(alien.getOffsetY());
+
+                // aliens mostly share a sprite with the one before, so only changes are written
+                if (alien.getSpriteRef().equals(ref)) {
+                    out.put((byte) 0);
+                } else {
+                    ref = alien.getSpriteRef();
+                    byte[] bytes = ref.getBytes(StandardCharsets.UTF_8);
+                    out.put((byte) 1);
+                    out.putShort((short) bytes.length);
+                    out.put(bytes);
+                }
+            }
+        }
+    }
+
+    /**
+     * Find a formation's index in the formation list. Aliens come in runs from the same formation, so
+     * the last one found is checked first.
+     */
+    private int formationIndex(Formation formation) {
+        if (lastFormationIndex >= formations.size() || formations.get(lastFormationIndex) != formation) {
+            lastFormationIndex = formations.indexOf(formation);
+        }
+        return lastFormationIndex;
+    }
+
+    /**
+     * Replace the state of the game with one written by {@link #saveState(ByteBuffer)}. Shots go back to
+     * the pool and are taken out of it again, every other entity is created afresh.
+     *
+     * @param in The buffer to read from
+     * @throws IllegalStateException Indicates the buffer doesn't hold a saved state of this version
+     */
+    public void restoreState(ByteBuffer in) {
+        if (in.getInt() != STATE_MAGIC) {
+            throw new IllegalStateException("Not a saved state");
+        }
+        int version = in.getInt();
+        if (version != STATE_VERSION) {
+            throw new IllegalStateException("Unsupported saved state version " + version);
+        }
+
+        time = in.getDouble();
+        lastFire = in.getDouble();
+        setSeed(in.getLong());
+
+        int flags = in.get();
+        waitingForKeyPress = (flags & 1) != 0;
+        logicRequiredThisLoop = (flags & 2) != 0;
+        startedThisTick = (flags & 4) != 0;
+
+        int input = in.get();
+        leftPressed = (input & INPUT_LEFT) != 0;
+        rightPressed = (input & INPUT_RIGHT) != 0;
+        firePressed = (input & INPUT_FIRE) != 0;
+
+        alienCount = in.getInt();
+        waveNumber = in.getInt();
+        lives = in.getInt();
+        int currentScore = in.getInt();
+        score.restore(currentScore, in.getInt());
+
+        byte[] text = new byte[in.getShort()];
+        in.get(text);
+        message = new String(text, StandardCharsets.UTF_8);
+
+        // throw the current entities away, handing the aliens and shots back to their pools
+        releaseEntities();
+
+        int formationCount = in.getInt();
+        for (int i = 0; i < formationCount; i++) {
+            Formation formation = createFormation(0, 0);
+            formation.restore(in.getDouble(), in.getDouble(), in.getDouble(), in.get() != 0);
+        }
+
+        events.clear();
+        int eventCount = in.getInt();
+        for (int i = 0; i < eventCount; i++) {
+            events.publish(in.getInt(), in.getInt(), in.getInt(), in.getInt());
+        }
+
+        int entityCount = in.getInt();
+        entities.ensureCapacity(entityCount);
+        entityStore.reserve(entityCount);
+
+        String ref = "";
+        EntityPool<AlienEntity> pool = null;
+        for (int i = 0; i < entityCount; i++) {
+            byte kind = in.get();
+            double x = in.getDouble();
+            double y = in.getDouble();
+            double previousX = in.getDouble();
+            double previousY = in.getDouble();
+            double dx = in.getDouble();
+            double dy = in.getDouble();
+
+            Entity entity;
+            if (kind == STATE_SHIP) {
+                byte[] bytes = new byte[in.getShort()];
+                in.get(bytes);
+                ship = new ShipEntity(this, new String(bytes, StandardCharsets.UTF_8), 0, 0);
+                entity = ship;
+            } else if (kind == STATE_ALIEN) {
+                Formation formation = formations.get(in.getInt());
+                double offsetX = in.getDouble();
+                double offsetY = in.getDouble();
+
+                // the sprite is only written when it differs from the previous alien's
+                if (in.get() != 0) {
+                    byte[] bytes = new byte[in.getShort()];
+                    in.get(bytes);
+                    ref = new String(bytes, StandardCharsets.UTF_8);
+                    pool = alienPool(ref);
+                }
+
+                AlienEntity alien = pool.acquire(0, 0);
+                alien.joinFormation(formation);
+                alien.setOffset(offsetX, offsetY);
+                entity = alien;
+            } else if (kind == STATE_SHOT) {
+                entity = shotPool.acquire(0, 0);
+            } else {
+                throw new IllegalStateException("Unknown entity kind " + kind);
+            }
+
+            entity.restorePosition(x, y, previousX, previousY);
+            entity.setHorizontalMovement(dx);
+            entity.setVerticalMovement(dy);
+            add(entity);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package sistema;
+
+import sistema.entities.Entity;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Draws the game into a plain int[] of RGB pixels without going through Java2D, so frames can be
+ * rendered headless, on a box with no graphics card, or fed straight into a video encoder or a
+ * learning agent. The sprites are decoded once into {@link RasterSprite}s and each row of opaque
+ * pixels is copied into the frame with an array copy.
+ *
+ * The frame is backed by a {@link BufferedImage}, so it can still be shown on screen with a single
+ * drawImage, and the message is blitted from a {@link sistema.hud.GlyphAtlas}. With a pool
+ * set the frame is cut into bands of {@link #BAND_HEIGHT} rows drawn in parallel, every band draws
+ * every entity clipped to its own rows so no two threads ever write the same pixel.
+ */
+public class SoftwareRenderer {
+
+    /** The number of rows drawn by one task when drawing in parallel */
+    static final int BAND_HEIGHT = 64;
+
+    /** The size of the frame */
+    private final int width;
+    private final int height;
+
+    /** The image the frame is drawn into */
+    private final BufferedImage image;
+
+    /** The pixels of {@link #image}, row by row as 0xRRGGBB */
+    private final int[] pixels;
+
+    /** The pool the bands are drawn on, null to draw on the calling thread */
+    private ForkJoinPool pool;
+
+    /** The locations the entities are drawn at this frame, two ints each */
+    private int[] locations = new int[256];
+
+    /** The sprites drawn this frame, in the same order as {@link #locations} */
+    private RasterSprite[] sprites = new RasterSprite[128];
+
+    /** The number of sprites drawn this frame */
+    private int count;
+
+    /** The frame as bytes for {@link #writeFrame(OutputStream)}, created the first time it's used */
+    private byte[] rgb;
+
+    /**
+     * Create a new renderer
+     *
+     * @param width The width of the frame
+     * @param height The height of the frame
+     */
+    public SoftwareRenderer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Draw the bands of the frame on a pool
+     *
+     * @param pool The pool to draw on, e.g. {@link ForkJoinPool#commonPool()}, null to draw on the calling thread
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Draw the current state of the game, the same picture as {@link Simulation#draw(Graphics2D, double)}
+     *
+     * @param simulation The game to draw
+     * @param alpha How far between the previous and the current tick to draw the entities, 0 to 1
+     */
+    public void render(Simulation simulation, double alpha) {
+        collect(simulation.getEntities(), alpha);
+
+        if (pool != null && height > BAND_HEIGHT) {
+            RangeTask.run(pool, 0, (height + BAND_HEIGHT - 1) / BAND_HEIGHT, 1,
+                    (from, to) -> drawBand(from * BAND_HEIGHT, Math.min(height, to * BAND_HEIGHT)));
+        } else {
+            drawBand(0, height);
+        }
+
+        // if we're waiting for an "any key" press then draw the current message
+        if (simulation.isWaitingForKeyPress()) {
+            Simulation.drawMessage(pixels, simulation.getMessage());
+        }
+    }
+
+    /**
+     * Work out where every entity is drawn this frame, so the bands only read plain arrays
+     *
+     * @param entities The entities to draw
+     * @param alpha How far between the previous and the current tick to draw the entities, 0 to 1
+     */
+    private void collect(ArrayList<Entity> entities, double alpha) {
+        count = entities.size();
+
+        if (sprites.length < count) {
+            sprites = new RasterSprite[Math.max(count, sprites.length * 2)];
+            locations = new int[sprites.length * 2];
+        }
+
+        for (int i = 0; i < count; i++) {
+            Entity entity = entities.get(i);
+            double previousX = entity.getPreviousX();
+            double previousY = entity.getPreviousY();
+
+            locations[i * 2] = (int) (previousX + (entity.getX() - previousX) * alpha);
+            locations[i * 2 + 1] = (int) (previousY + (entity.getY() - previousY) * alpha);
+            sprites[i] = entity.getSprite().getRaster();
+        }
+
+        // let go of the sprites of the entities that were drawn last frame but not this one
+        Arrays.fill(sprites, count, sprites.length, null);
+    }
+
+    /**
+     * Blank out a band of rows and draw the entities over it, in the order they're in the game
+     *
+     * @param top The first row of the band
+     * @param bottom The row after the last of the band
+     */
+    private void drawBand(int top, int bottom) {
+        Arrays.fill(pixels, top * width, bottom * width, 0);
+
+        for (int i = 0; i < count; i++) {
+            int y = locations[i * 2 + 1];
+
+            if (y < bottom && y + sprites[i].getHeight() > top) {
+                sprites[i].blit(pixels, width, locations[i * 2], y, top, bottom);
+            }
+        }
+    }
+
+    /**
+     * Get the image the frame is drawn into
+     *
+     * @return The frame
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Get the pixels of the frame, row by row as 0xRRGGBB. The array is drawn into every frame
+     *
+     * @return The pixels
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Write the frame as raw 24 bit RGB, e.g. to pipe into
+     * <code>ffmpeg -f rawvideo -pix_fmt rgb24 -s 800x600 -r 60 -i -</code>
+     *
+     * @param out The stream to write to
+     * @throws IOException Indicates the frame couldn't be written
+     */
+    public void writeFrame(OutputStream out) throws IOException {
+        if (rgb == null) {
+            rgb = new byte[width * height * 3];
+        }
+
+        for (int i = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            rgb[i * 3] = (byte) (pixel >> 16);
+            rgb[i * 3 + 1] = (byte) (pixel >> 8);
+            rgb[i * 3 + 2] = (byte) pixel;
+        }
+        out.write(rgb);
+    }
+
+    /**
+     * Shrink the frame into a greyscale observation, each output pixel the average brightness of a
+     * square of frame pixels. Any rows or columns left over at the edges are dropped.
+     *
+     * @param factor The side of the square of frame pixels each output pixel covers
+     * @param out The array to write to, (width / factor) * (height / factor) bytes from the offset
+     * @param offset The index in the array to start writing at
+     */
+    public void downsample(int factor, byte[] out, int offset) {
+        int columns = width / factor;
+        int rows = height / factor;
+        int area = factor * factor * 3;
+
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int sum = 0;
+
+                for (int y = row * factor; y < (row + 1) * factor; y++) {
+                    int index = y * width + column * factor;
+                    for (int x = 0; x < factor; x++) {
+                        int pixel = pixels[index + x];
+                        sum += ((pixel >> 16) & 0xff) + ((pixel >> 8) & 0xff) + (pixel & 0xff);
+                    }
+                }
+
+                out[offset + row * columns + column] = (byte) (sum / area);
+            }
+        }
+    }
+}
@@ -1,18 +1,52 @@
 package sistema;
 
+import sistema.collision.CollisionMask;
+
 import java.awt.*;
 
 public class Sprite {
     /** The image to be drawn for this sprite */
     private Image image;
 
+    /** The width of the image, resolved once when the sprite is loaded */
+    private final int width;
+
+    /** The height of the image, resolved once when the sprite is loaded */
+    private final int height;
+
+    /** The mask of the opaque pixels of the image, null if none was built */
+    private final CollisionMask mask;
+
+    /** The atlas this sprite has been packed into, null if it's drawn from its own image */
+    private SpriteAtlas atlas;
+
+    /** The location of this sprite in its atlas */
+    private int atlasX;
+    private int atlasY;
+
+    /** The sprite decoded for the software renderer, null until first asked for */
+    private volatile RasterSprite raster;
+
     /**
      * Create a new sprite based on an image
      *
      * @param image The image that is this sprite
      */
     public Sprite(Image image) {
+        this(image, null);
+    }
+
+    /**
+     * Create a new sprite based on an image
+     *
+     * @param image The image that is this sprite
+     * @param mask The mask of the opaque pixels of the image, used for pixel perfect collisions
+     */
+    public Sprite(Image image, CollisionMask mask) {
         this.image = image;
+        this.width = image.getWidth(null);
+        this.height = image.getHeight(null);
+        this.mask = mask;
     }
 
     /**
@@ -21,7 +55,7 @@ public class Sprite {
      * @return The width in pixels of this sprite
      */
     public int getWidth() {
-        return image.getWidth(null);
+        return width;
     }
 
     /**
@@ -30,7 +64,62 @@ public class Sprite {
      * @return The height in pixels of this sprite
      */
     public int getHeight() {
-        return  image.getHeight(null);
+        return height;
+    }
+
+    /**
+     * Get the mask of the opaque pixels of this sprite
+     *
+     * @return The collision mask, or null if the sprite has none
+     */
+    public CollisionMask getMask() {
+        return mask;
+    }
+
+    /**
+     * Get the image this sprite was created from
+     *
+     * @return The image of the sprite
+     */
+    public Image getImage() {
+        return image;
+    }
+
+    /**
+     * Get this sprite decoded into RGB pixels for the {@link SoftwareRenderer}, decoding it the first
+     * time. Two threads asking at once may both decode it, they get equal results.
+     *
+     * @return The decoded sprite
+     */
+    public RasterSprite getRaster() {
+        RasterSprite decoded = raster;
+        if (decoded == null) {
+            decoded = new RasterSprite(image);
+            raster = decoded;
+        }
+        return decoded;
+    }
+
+    /**
+     * Point this sprite at the sub-rectangle of an atlas it has been packed into
+     *
+     * @param atlas The atlas holding the sprite
+     * @param x The x location of the sprite in the atlas
+     * @param y The y location of the sprite in the atlas
+     */
+    void setAtlas(SpriteAtlas atlas, int x, int y) {
+        this.atlas = atlas;
+        this.atlasX = x;
+        this.atlasY = y;
+    }
+
+    /**
+     * Get the id of the atlas this sprite is drawn from
+     *
+     * @return The id of the atlas, 0 if the sprite isn't in one
+     */
+    public int getAtlasId() {
+        return atlas == null ? 0 : atlas.getId();
     }
 
     /**
@@ -41,6 +130,22 @@ public class Sprite {
      * @param y The y location at which to draw the sprite
      */
     public void draw(Graphics g, int x, int y) {
-        g.drawImage(image, x, y, null);
+        if (atlas == null) {
+            g.drawImage(image, x, y, null);
+            return;
+        }
+
+        g.drawImage(
+                atlas.getImage(),
+                x,
+                y,
+                x + width,
+                y + height,
+                atlasX,
+                atlasY,
+                atlasX + width,
+                atlasY + height,
+                null
+        );
     }
 }
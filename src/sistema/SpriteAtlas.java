@@ -0,0 +1,106 @@
+package sistema;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A single image holding many sprites side by side. Once packed into an atlas, a sprite is drawn
+ * from its sub-rectangle of the atlas image, so a frame full of different sprites is drawn from one
+ * source surface rather than one per sprite.
+ *
+ * Sprites are packed onto shelves: sorted tallest first, then laid left to right in rows as tall as
+ * the first sprite in the row. It wastes a little space but sprites of similar height, like the
+ * frames of an animation, pack tightly.
+ */
+public class SpriteAtlas {
+
+    /** The space left around each sprite so neighbours never bleed into each other */
+    private static final int PADDING = 1;
+
+    /** The number of atlases ever created, used to hand out ids */
+    private static int count = 0;
+
+    /** The id of this atlas, from 1 up */
+    private final int id;
+
+    /** The image holding the sprites */
+    private final Image image;
+
+    private SpriteAtlas(Image image) {
+        this.id = ++count;
+        this.image = image;
+    }
+
+    /**
+     * Pack sprites into a new atlas and point each of them at its sub-rectangle
+     *
+     * @param sprites The sprites to pack
+     * @param store The store used to create the atlas image
+     * @return The atlas
+     */
+    static SpriteAtlas pack(Collection<Sprite> sprites, SpriteStore store) {
+        List<Sprite> sorted = new ArrayList<>(sprites);
+        sorted.sort((a, b) -> b.getHeight() - a.getHeight());
+
+        // the atlas is as wide as the widest sprite, and at least 256 pixels
+        int width = 256;
+        for (Sprite sprite : sorted) {
+            width = Math.max(width, sprite.getWidth() + PADDING * 2);
+        }
+
+        // first work out where everything goes, and from that how tall the atlas needs to be
+        int[] locations = new int[sorted.size() * 2];
+        int x = 0;
+        int y = 0;
+        int shelfHeight = 0;
+
+        for (int i = 0; i < sorted.size(); i++) {
+            Sprite sprite = sorted.get(i);
+
+            if (x + sprite.getWidth() + PADDING * 2 > width) {
+                x = 0;
+                y += shelfHeight;
+                shelfHeight = 0;
+            }
+
+            locations[i * 2] = x + PADDING;
+            locations[i * 2 + 1] = y + PADDING;
+            x += sprite.getWidth() + PADDING * 2;
+            shelfHeight = Math.max(shelfHeight, sprite.getHeight() + PADDING * 2);
+        }
+
+        // then draw every sprite into its place
+        Image image = store.createImage(width, Math.max(1, y + shelfHeight));
+        SpriteAtlas atlas = new SpriteAtlas(image);
+        Graphics g = image.getGraphics();
+
+        for (int i = 0; i < sorted.size(); i++) {
+            Sprite sprite = sorted.get(i);
+
+            g.drawImage(sprite.getImage(), locations[i * 2], locations[i * 2 + 1], null);
+            sprite.setAtlas(atlas, locations[i * 2], locations[i * 2 + 1]);
+        }
+
+        g.dispose();
+        return atlas;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Image getImage() {
+        return image;
+    }
+
+    /**
+     * Get the number of atlases ever created, which is also the highest id handed out
+     *
+     * @return The number of atlases
+     */
+    public static int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,86 @@
+package sistema;
+
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * Collects the sprites to draw in a frame and draws them grouped by source image, so all the
+ * sprites packed into the same {@link SpriteAtlas} are blitted in one run from the same surface
+ * rather than interleaved with other images. Within a group the sprites keep the order they were
+ * added in.
+ *
+ * The batch is meant to be reused frame after frame, once its arrays have grown to fit a frame
+ * it doesn't allocate.
+ */
+public class SpriteBatch {
+
+    /** The number of sprites queued */
+    private int count;
+
+    /** The sprites queued */
+    private Sprite[] sprites = new Sprite[64];
+
+    /** The locations the sprites are drawn at */
+    private int[] x = new int[64];
+    private int[] y = new int[64];
+
+    /** The order the sprites are drawn in, grouped by atlas */
+    private int[] order = new int[64];
+
+    /** The number of sprites queued per atlas id, used to sort them */
+    private int[] counts = new int[2];
+
+    /**
+     * Queue a sprite to be drawn
+     *
+     * @param sprite The sprite to draw
+     * @param x The x location to draw it at
+     * @param y The y location to draw it at
+     */
+    public void add(Sprite sprite, int x, int y) {
+        if (count == sprites.length) {
+            int capacity = count * 2;
+            sprites = Arrays.copyOf(sprites, capacity);
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            order = new int[capacity];
+        }
+
+        sprites[count] = sprite;
+        this.x[count] = x;
+        this.y[count] = y;
+        count++;
+    }
+
+    /**
+     * Draw every queued sprite and empty the batch
+     *
+     * @param g The graphics context on which to draw
+     */
+    public void flush(Graphics g) {
+        // counting sort on the atlas id, sprites outside of any atlas have id 0
+        int keys = SpriteAtlas.getCount() + 1;
+        if (counts.length < keys + 1) {
+            counts = new int[keys + 1];
+        }
+        Arrays.fill(counts, 0, keys + 1, 0);
+
+        for (int i = 0; i < count; i++) {
+            counts[sprites[i].getAtlasId() + 1]++;
+        }
+        for (int k = 1; k <= keys; k++) {
+            counts[k] += counts[k - 1];
+        }
+        for (int i = 0; i < count; i++) {
+            order[counts[sprites[i].getAtlasId()]++] = i;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int index = order[i];
+            sprites[index].draw(g, x[index], y[index]);
+            sprites[index] = null;
+        }
+
+        count = 0;
+    }
+}
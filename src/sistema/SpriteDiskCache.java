@@ -0,0 +1,285 @@
+package sistema;
+
+import sistema.collision.CollisionMask;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Decoded sprites kept on disk between runs, so starting the game doesn't have to start up ImageIO
+ * and decode every GIF again. The file is read in one go and each sprite's pixels are copied straight
+ * out of it into its image. It's read onto the heap rather than mapped, so nothing keeps the file
+ * open and {@link #save()} can move a new one over it on any platform.
+ *
+ * Every sprite is stored with a fingerprint of its source image, the length and CRC of the file's
+ * bytes. A sprite whose source changed is decoded again, and the file is rewritten with the new
+ * pixels once the sprites are loaded, see {@link #save()}. A file that's from another version,
+ * truncated or fails its checksum is ignored and rebuilt the same way.
+ *
+ * The file is a header, then one record per sprite:
+ * <pre>
+ * header:  "SPRC"  version  count  CRC of everything after the header
+ * record:  ref length (short)  ref (UTF-8)  fingerprint (long)  width  height
+ *          ARGB pixels (width * height ints)  collision mask (longs, see {@link CollisionMask})
+ * </pre>
+ * everything little endian, so on most machines the pixels copy out as they are.
+ */
+public class SpriteDiskCache {
+
+    /** The first four bytes of every cache file, "SPRC" */
+    private static final int MAGIC = 0x53505243;
+
+    /** The version of the file format, bumped whenever it changes */
+    static final int VERSION = 1;
+
+    /** The size of the header: the magic, the version, the count and the checksum */
+    private static final int HEADER_SIZE = 16;
+
+    /** The file the sprites are kept in */
+    private final Path path;
+
+    /** The records read from the file, each a buffer from the record's fingerprint on */
+    private final Map<String, ByteBuffer> stored = new ConcurrentHashMap<>();
+
+    /** The records of sprites decoded since the file was read, to be written out by {@link #save()} */
+    private final Map<String, ByteBuffer> decoded = new ConcurrentHashMap<>();
+
+    /** Why the file couldn't be used, null if it was used or there wasn't one */
+    private String rejected;
+
+    /** True if the file is missing or couldn't be used, and hasn't been written since */
+    private volatile boolean outOfDate;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Open a cache, reading the sprites stored in it if the file exists and is valid
+     *
+     * @param path The file the sprites are kept in
+     */
+    public SpriteDiskCache(Path path) {
+        this.path = path;
+
+        if (!Files.exists(path)) {
+            outOfDate = true;
+            return;
+        }
+
+        try {
+            read(ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN));
+        } catch (IOException | RuntimeException e) {
+            // anything wrong with the file just means starting from an empty cache
+            stored.clear();
+            rejected = e.getMessage();
+            outOfDate = true;
+        }
+    }
+
+    /**
+     * Index the records of a cache file
+     *
+     * @param data The whole file
+     * @throws IllegalStateException Indicates the file isn't a valid cache of this version
+     */
+    private void read(ByteBuffer data) {
+        if (data.remaining() < HEADER_SIZE || data.getInt() != MAGIC) {
+            throw new IllegalStateException("not a sprite cache");
+        }
+        int version = data.getInt();
+        if (version != VERSION) {
+            throw new IllegalStateException("version " + version + ", expected " + VERSION);
+        }
+        int count = data.getInt();
+        int checksum = data.getInt();
+
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new IllegalStateException("checksum mismatch");
+        }
+
+        for (int i = 0; i < count; i++) {
+            byte[] ref = new byte[data.getShort()];
+            data.get(ref);
+
+            int start = data.position();
+            int width = data.getInt(start + 8);
+            int height = data.getInt(start + 12);
+            int end = start + 16 + width * height * 4 + CollisionMask.getSizeInBytes(width, height);
+
+            stored.put(new String(ref, StandardCharsets.UTF_8), data.duplicate().position(start).limit(end).slice().order(ByteOrder.LITTLE_ENDIAN));
+            data.position(end);
+        }
+    }
+
+    /**
+     * Work out the fingerprint of a source image, which changes whenever its bytes do
+     *
+     * @param source The bytes of the source image
+     * @return The fingerprint
+     */
+    public static long fingerprint(byte[] source) {
+        CRC32 crc = new CRC32();
+        crc.update(source);
+        return ((long) source.length << 32) | crc.getValue();
+    }
+
+    /**
+     * Get a sprite from the cache
+     *
+     * @param ref The reference to the sprite's image
+     * @param fingerprint The fingerprint of the image as it is now
+     * @param store The store the sprite's image is created with
+     * @return The sprite, or null if it isn't cached or its image has changed since it was
+     */
+    Sprite get(String ref, long fingerprint, SpriteStore store) {
+        ByteBuffer record = stored.get(ref);
+
+        if (record == null || record.getLong(0) != fingerprint) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+
+        // every caller reads its own view of the record, so sprites can come out of it on any thread
+        ByteBuffer in = record.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        in.position(8);
+        int width = in.getInt();
+        int height = in.getInt();
+
+        Image image = store.createImage(width, height);
+        BufferedImage buffered = (BufferedImage) image;
+
+        if (buffered.getType() == BufferedImage.TYPE_INT_ARGB) {
+            // a plain image without a display, the pixels go straight into its data
+            in.asIntBuffer().get(((DataBufferInt) buffered.getRaster().getDataBuffer()).getData());
+        } else {
+            int[] pixels = new int[width * height];
+            in.asIntBuffer().get(pixels);
+            buffered.setRGB(0, 0, width, height, pixels, 0, width);
+        }
+        in.position(in.position() + width * height * 4);
+
+        return new Sprite(image, CollisionMask.read(in, width, height));
+    }
+
+    /**
+     * Add a sprite that had to be decoded, so it's in the file next time it's saved
+     *
+     * @param ref The reference to the sprite's image
+     * @param fingerprint The fingerprint of the image
+     * @param image The decoded image
+     * @param mask The mask of the image's opaque pixels
+     */
+    void put(String ref, long fingerprint, BufferedImage image, CollisionMask mask) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        ByteBuffer record = ByteBuffer.allocate(16 + width * height * 4 + CollisionMask.getSizeInBytes(width, height))
+                                      .order(ByteOrder.LITTLE_ENDIAN);
+        record.putLong(fingerprint);
+        record.putInt(width);
+        record.putInt(height);
+
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        record.asIntBuffer().put(pixels);
+        record.position(record.position() + pixels.length * 4);
+        mask.write(record);
+
+        record.flip();
+        decoded.put(ref, record);
+    }
+
+    /**
+     * Check if the file needs writing, because a sprite was decoded since it was read or it couldn't be read
+     *
+     * @return True if the file is out of date
+     */
+    public boolean isDirty() {
+        return outOfDate || !decoded.isEmpty();
+    }
+
+    /**
+     * Write the file again if it's out of date, with the sprites it held and the ones decoded since.
+     * The new file is written next to the old one and moved over it, so a crash never leaves half a
+     * cache behind.
+     *
+     * @return True if the file was written
+     * @throws IOException Indicates the file couldn't be written
+     */
+    public synchronized boolean save() throws IOException {
+        if (!isDirty()) {
+            return false;
+        }
+
+        Map<String, ByteBuffer> records = new LinkedHashMap<>(stored);
+        records.putAll(decoded);
+
+        int size = HEADER_SIZE;
+        for (Map.Entry<String, ByteBuffer> record : records.entrySet()) {
+            size += 2 + record.getKey().getBytes(StandardCharsets.UTF_8).length + record.getValue().remaining();
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        out.position(HEADER_SIZE);
+        for (Map.Entry<String, ByteBuffer> record : records.entrySet()) {
+            byte[] ref = record.getKey().getBytes(StandardCharsets.UTF_8);
+            out.putShort((short) ref.length);
+            out.put(ref);
+            out.put(record.getValue().duplicate());
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(out.duplicate().flip().position(HEADER_SIZE));
+        out.putInt(0, MAGIC);
+        out.putInt(4, VERSION);
+        out.putInt(8, records.size());
+        out.putInt(12, (int) crc.getValue());
+        out.rewind();
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // the records now on disk are the ones held in memory, so there's nothing left to write
+        for (Map.Entry<String, ByteBuffer> record : records.entrySet()) {
+            stored.put(record.getKey(), record.getValue());
+            decoded.remove(record.getKey(), record.getValue());
+        }
+        outOfDate = false;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%s hits=%d misses=%d stored=%d%s",
+                path,
+                hits.sum(),
+                misses.sum(),
+                stored.size(),
+                rejected != null ? " rejected (" + rejected + ")" : ""
+        );
+    }
+}
@@ -1,73 +1,228 @@
 package sistema;
 
+import sistema.collision.CollisionMask;
+
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URL;
-import java.util.HashMap;
-
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The store all sprites are loaded through. Sprites are cached in an {@link AssetCache}, so the
+ * store can be used from any thread, each sprite is only ever loaded once at a time, and a manifest
+ * of sprites can be preloaded in parallel at startup to keep disk access and image decoding off
+ * the game loop. With a {@link SpriteDiskCache} set, sprites decoded on an earlier run are copied out
+ * of the cache file instead of being decoded again.
+ */
 public class SpriteStore {
     /** The single instance of this class **/
     private static SpriteStore single = new SpriteStore();
 
-    private HashMap sprites  = new HashMap();
+    /** The cached sprites, weighed by the bytes of their image */
+    private final AssetCache<Sprite> sprites = new AssetCache<>(
+            this::loadSprite,
+            sprite -> (long) sprite.getWidth() * sprite.getHeight() * 4
+    );
+
+    /** The decoded sprites kept on disk between runs, null to always decode the images */
+    private volatile SpriteDiskCache diskCache;
 
     public static SpriteStore get() {
         return single;
     }
 
+    /**
+     * Get a sprite, loading it if it isn't cached yet
+     *
+     * @param ref The reference to the image to use for the sprite
+     * @return The sprite
+     * @throws AssetLoadException Indicates the sprite couldn't be found or decoded
+     */
     public Sprite getSprite(String ref) {
+        return sprites.get(ref);
+    }
+
+    /**
+     * Load sprites in parallel in the background
+     *
+     * @param refs The references to the images to load
+     * @return Completed once every sprite is loaded
+     */
+    public CompletableFuture<Void> preload(Collection<String> refs) {
+        return sprites.preload(refs, ForkJoinPool.commonPool());
+    }
 
-        // If we've already got the sprite in the cache then just return the existing version
-        if (sprites.get(ref) != null) {
-            return (Sprite) sprites.get(ref);
+    /**
+     * Load every sprite listed in a manifest in parallel in the background. The manifest is a
+     * resource with one sprite reference per line, blank lines and lines starting with # are skipped.
+     *
+     * @param manifestRef The reference to the manifest
+     * @return Completed once every sprite is loaded
+     * @throws AssetLoadException Indicates the manifest couldn't be read
+     */
+    public CompletableFuture<Void> preloadManifest(String manifestRef) {
+        List<String> refs = new ArrayList<>();
+
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(manifestRef)) {
+            if (in == null) {
+                throw new AssetLoadException("Can't find manifest: " + manifestRef);
+            }
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    refs.add(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new AssetLoadException("Failed to read manifest: " + manifestRef, e);
         }
 
-        // otherwise, go away and grab the sprite frm the resource loader
-        BufferedImage sourceImage = null;
+        CompletableFuture<Void> loaded = preload(refs);
+        return diskCache != null ? loaded.thenRun(this::saveDiskCache) : loaded;
+    }
 
-        try {
-            // The ClassLoader.getResource() ensures we get the sprite from the appropriate place,
-            // this helps with deploying the game with things like webstart.
-            // You could equally do a file look up here
-            URL url = this.getClass().getClassLoader().getResource(ref);
+    /**
+     * Keep the decoded sprites on disk between runs. Set it before any sprite is loaded, the cache
+     * file is brought up to date whenever a manifest finishes preloading, or with {@link #saveDiskCache()}.
+     *
+     * @param diskCache The cache, null to always decode the images
+     */
+    public void setDiskCache(SpriteDiskCache diskCache) {
+        this.diskCache = diskCache;
+    }
 
-            if (url == null) {
-                fail("Can't find ref: " + ref);
-            }
+    public SpriteDiskCache getDiskCache() {
+        return diskCache;
+    }
 
-            //use ImageIO to read the image in
-            sourceImage = ImageIO.read(url);
+    /**
+     * Write the disk cache out if any sprite had to be decoded since it was read. A cache that can't
+     * be written only costs the next run its speed, so the failure is reported and otherwise ignored.
+     */
+    public void saveDiskCache() {
+        SpriteDiskCache cache = diskCache;
+        if (cache == null) {
+            return;
+        }
 
+        try {
+            cache.save();
         } catch (IOException e) {
-            fail("Failed to load: " + ref);
+            System.err.println("Failed to write the sprite cache: " + e.getMessage());
         }
+    }
 
-        // create an accelerated image of the right size to store our sprite in
-        GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment()
-                                                .getDefaultScreenDevice()
-                                                .getDefaultConfiguration();
+    /**
+     * Set how many bytes of sprite images the store may keep cached before evicting the least
+     * recently used ones
+     *
+     * @param bytes The budget in bytes
+     */
+    public void setBudget(long bytes) {
+        sprites.setBudget(bytes);
+    }
 
-        Image image = gc.createCompatibleImage(
-                sourceImage.getWidth(),
-                sourceImage.getHeight(),
-                Transparency.BITMASK
-        );
+    /**
+     * Get the hit, miss and load time statistics of the store
+     *
+     * @return A snapshot of the statistics
+     */
+    public AssetCache.Stats getStats() {
+        return sprites.getStats();
+    }
 
-        // draw our source image into the accelerated image
-        image.getGraphics().drawImage(sourceImage, 0, 0, null);
+    /**
+     * Pack every sprite loaded so far into a single atlas image. From then on those sprites are drawn
+     * from the atlas, sprites loaded later are drawn from their own image until the next atlas is built.
+     *
+     * @return The atlas
+     */
+    public SpriteAtlas buildAtlas() {
+        return SpriteAtlas.pack(sprites.values(), this);
+    }
+
+    private Sprite loadSprite(String ref) throws IOException {
+        // The ClassLoader.getResource() ensures we get the sprite from the appropriate place,
+        // this helps with deploying the game with things like webstart.
+        // You could equally do a file look up here
+        URL url = this.getClass().getClassLoader().getResource(ref);
+
+        if (url == null) {
+            throw new AssetLoadException("Can't find ref: " + ref);
+        }
 
-        // create a sprite, add it the cache then return it
-        Sprite sprite = new Sprite(image);
-        sprites.put(ref, sprite);
+        byte[] source;
+        try (InputStream in = url.openStream()) {
+            source = in.readAllBytes();
+        }
+
+        // a sprite decoded on an earlier run is copied out of the disk cache, as long as its image
+        // hasn't changed since, which keeps ImageIO from ever being started
+        SpriteDiskCache cache = diskCache;
+        long fingerprint = 0;
+        if (cache != null) {
+            fingerprint = SpriteDiskCache.fingerprint(source);
+
+            Sprite cached = cache.get(ref, fingerprint, this);
+            if (cached != null) {
+                return cached;
+            }
+        }
 
-        return sprite;
+        //use ImageIO to read the image in
+        BufferedImage sourceImage = ImageIO.read(new ByteArrayInputStream(source));
 
+        if (sourceImage == null) {
+            throw new AssetLoadException("Failed to load: " + ref);
+        }
+
+        // create an accelerated image of the right size to store our sprite in
+        Image image = createImage(sourceImage.getWidth(), sourceImage.getHeight());
+
+        // draw our source image into the accelerated image
+        Graphics g = image.getGraphics();
+        g.drawImage(sourceImage, 0, 0, null);
+        g.dispose();
+
+        // create a sprite along with the mask of its opaque pixels
+        CollisionMask mask = CollisionMask.fromImage(sourceImage);
+        if (cache != null) {
+            cache.put(ref, fingerprint, sourceImage, mask);
+        }
+        return new Sprite(image, mask);
     }
 
-    private void fail(String message) {
-        System.err.println(message);
-        System.exit(0);
+    /**
+     * Create an accelerated image with a transparent background. Without a display there's nothing
+     * to accelerate for, so a plain image will do.
+     *
+     * @param width The width of the image
+     * @param height The height of the image
+     * @return The image
+     */
+    Image createImage(int width, int height) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                                                .getDefaultScreenDevice()
+                                                .getDefaultConfiguration();
+
+        return gc.createCompatibleImage(width, height, Transparency.BITMASK);
     }
 }
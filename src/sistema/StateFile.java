@@ -0,0 +1,72 @@
+package sistema;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A saved game state kept in a memory-mapped file, so saving writes straight into the page cache
+ * with no copy through a stream, and loading reads straight out of it. The file is mapped once and
+ * reused for every save, e.g. as a quicksave slot.
+ */
+public class StateFile implements Closeable {
+
+    /** The file's channel, kept open while it's mapped */
+    private final FileChannel channel;
+
+    /** The mapping of the whole file */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Open a state file, creating it if it doesn't exist
+     *
+     * @param path The file
+     * @param capacity The size to map, which must hold the largest state saved, see
+     *                 {@link Simulation#getStateSizeBound()}. An existing file that is bigger is mapped whole.
+     */
+    public StateFile(Path path, int capacity) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, channel.size()));
+    }
+
+    /**
+     * Save a game's state, overwriting the one saved before
+     *
+     * @param simulation The game to save
+     * @throws IllegalStateException Indicates the state may not fit in the file
+     */
+    public void save(Simulation simulation) {
+        if (simulation.getStateSizeBound() > buffer.capacity()) {
+            throw new IllegalStateException("The state may not fit in " + buffer.capacity() + " bytes");
+        }
+
+        buffer.clear();
+        simulation.saveState(buffer);
+    }
+
+    /**
+     * Restore a game to the state saved last
+     *
+     * @param simulation The game to restore
+     * @throws IllegalStateException Indicates the file doesn't hold a saved state
+     */
+    public void load(Simulation simulation) {
+        buffer.clear();
+        simulation.restoreState(buffer);
+    }
+
+    /**
+     * Make sure the state saved last has reached the disk, not just the page cache
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,73 @@
+package sistema;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock-free triple buffer for handing the latest value from one writer thread to one reader
+ * thread. The writer always has a back buffer to fill and the reader always has a front buffer to
+ * read, so neither ever waits on the other. Publishing swaps the back buffer with the middle one,
+ * and reading swaps the middle one with the front buffer if something new was published.
+ *
+ * The buffers themselves are reused, so the reader must be done with a value before asking for
+ * the next one.
+ *
+ * @param <T> The type of the buffers
+ */
+public class TripleBuffer<T> {
+
+    /** Set in {@link #middle} when the middle buffer holds a value the reader hasn't seen */
+    private static final int FRESH = 4;
+
+    /** The three buffers */
+    private final T[] buffers;
+
+    /** The index of the middle buffer, plus the {@link #FRESH} flag */
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    /** The index of the buffer owned by the writer */
+    private int back = 0;
+
+    /** The index of the buffer owned by the reader */
+    private int front = 2;
+
+    /**
+     * Create a new triple buffer
+     *
+     * @param first The first buffer
+     * @param second The second buffer
+     * @param third The third buffer
+     */
+    @SuppressWarnings("unchecked")
+    public TripleBuffer(T first, T second, T third) {
+        buffers = (T[]) new Object[] {first, second, third};
+    }
+
+    /**
+     * Get the buffer the writer should fill next. Only to be called from the writer thread.
+     *
+     * @return The back buffer
+     */
+    public T getBack() {
+        return buffers[back];
+    }
+
+    /**
+     * Publish the back buffer to the reader. Only to be called from the writer thread.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & ~FRESH;
+    }
+
+    /**
+     * Get the latest published buffer. Only to be called from the reader thread.
+     *
+     * @return The latest value published, the same one as last time if nothing new was published
+     */
+    public T read() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & ~FRESH;
+        }
+
+        return buffers[front];
+    }
+}
@@ -0,0 +1,49 @@
+package sistema;
+
+import sistema.events.EventQueue;
+import sistema.events.EventSystem;
+import sistema.events.GameEvent;
+
+/**
+ * Applies the rules of a wave of aliens to the game's events: the player dies when an alien gets them,
+ * the remaining aliens speed up whenever one is shot, and the player wins when the last one goes.
+ *
+ * Consecutive kills are applied together, so the formations are sped up once per batch rather than
+ * once per hit. A death breaks the run, so the game ends with the same message it would have if every
+ * event had been handled the moment it happened.
+ */
+class WaveSystem implements EventSystem {
+
+    /** The game the rules apply to */
+    private final Simulation simulation;
+
+    WaveSystem(Simulation simulation) {
+        this.simulation = simulation;
+    }
+
+    @Override
+    public void process(EventQueue events, int first, int end) {
+        int kills = 0;
+
+        for (int event = first; event != end; event++) {
+            switch (events.type(event)) {
+                case GameEvent.ALIEN_KILLED:
+                    kills++;
+                    break;
+                case GameEvent.PLAYER_KILLED:
+                    if (kills > 0) {
+                        simulation.notifyAliensKilled(kills);
+                        kills = 0;
+                    }
+                    simulation.notifyDeath();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        if (kills > 0) {
+            simulation.notifyAliensKilled(kills);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package sistema.bench;
+
+/**
+ * A small benchmark harness. Each benchmark is a setup step, which isn't timed, followed by a
+ * batch of calls to the operation being measured. A few batches are run to let the JIT warm up
+ * before the measured ones, and the mean and best time per operation are reported.
+ */
+public class Benchmark {
+
+    /** The number of batches run before measuring */
+    private final int warmupBatches;
+
+    /** The number of batches measured */
+    private final int measuredBatches;
+
+    /** Results are folded in here so the JIT can't throw the measured work away */
+    private static volatile long sink;
+
+    /**
+     * Create a new harness
+     *
+     * @param warmupBatches The number of batches run before measuring
+     * @param measuredBatches The number of batches measured
+     */
+    public Benchmark(int warmupBatches, int measuredBatches) {
+        this.warmupBatches = warmupBatches;
+        this.measuredBatches = measuredBatches;
+    }
+
+    /**
+     * An operation being measured
+     */
+    public interface Operation {
+
+        /**
+         * Run the operation once
+         *
+         * @return Any value derived from the work done, it's consumed so the work can't be optimised away
+         */
+        long run();
+    }
+
+    /**
+     * Run a benchmark and print its result
+     *
+     * @param name The name of the benchmark
+     * @param entities The number of entities the benchmark runs with
+     * @param batchSize The number of operations per batch
+     * @param setup Run before each batch, not timed
+     * @param operation The operation to measure
+     */
+    public void run(String name, int entities, int batchSize, Runnable setup, Operation operation) {
+        long total = 0;
+        long best = Long.MAX_VALUE;
+
+        for (int batch = 0; batch < warmupBatches + measuredBatches; batch++) {
+            setup.run();
+
+            long result = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < batchSize; i++) {
+                result += operation.run();
+            }
+            long elapsed = System.nanoTime() - start;
+            sink += result;
+
+            if (batch >= warmupBatches) {
+                total += elapsed;
+                best = Math.min(best, elapsed);
+            }
+        }
+
+        System.out.printf(
+                "%-24s %8d entities %14.1f ns/op (best %.1f)%n",
+                name,
+                entities,
+                (double) total / ((long) measuredBatches * batchSize),
+                (double) best / batchSize
+        );
+    }
+}
@@ -0,0 +1,136 @@
+package sistema.bench;
+
+import sistema.Simulation;
+import sistema.collision.Broadphase;
+import sistema.collision.BruteForceBroadphase;
+import sistema.collision.CollisionHandler;
+import sistema.collision.UniformGridBroadphase;
+import sistema.entities.AlienEntity;
+import sistema.entities.Entity;
+import sistema.entities.Formation;
+import sistema.entities.ShotEntity;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Benchmarks the engine headless: moving the entities, the collision sweep, notifyAlienKilled, saving
+ * and restoring the game state and full ticks, at a range of entity counts. Run it before and after
+ * every engine change.
+ *
+ * Configured with -Dbench.counts (default 60,1000,10000,100000), -Dbench.warmup and
+ * -Dbench.batches for the number of warmup and measured batches and -Dentities.parallel=true to
+ * move the entities and search the grid on every core.
+ */
+public class EngineBenchmark {
+
+    /** The length of a tick, as if running at 120Hz (ms) */
+    private static final double TICK = 1000.0 / 120;
+
+    /** The largest entity count the brute force broadphase is run at */
+    private static final int BRUTE_FORCE_LIMIT = 10000;
+
+    /** The number of pairs found by the last collision sweep */
+    private static long pairs;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        Benchmark benchmark = new Benchmark(
+                Integer.getInteger("bench.warmup", 5),
+                Integer.getInteger("bench.batches", 10)
+        );
+
+        for (String count : System.getProperty("bench.counts", "60,1000,10000,100000").split(",")) {
+            run(benchmark, Integer.parseInt(count.trim()));
+        }
+    }
+
+    private static void run(Benchmark benchmark, int count) {
+        ForkJoinPool pool = Boolean.getBoolean("entities.parallel") ? ForkJoinPool.commonPool() : null;
+        Simulation simulation = new Simulation();
+        simulation.setPool(pool);
+        simulation.startGame();
+
+        // size the batches so the cheap operations touch about a million entities per batch and the
+        // expensive ones a hundred thousand, but always run at least one operation
+        int batch = Math.max(1, 1000000 / count);
+        int slowBatch = Math.max(1, Math.min(100, 100000 / count));
+        Runnable populate = () -> populate(simulation, count);
+        Runnable nothing = () -> {};
+
+        // moving forward then back keeps the entities where they were populated
+        populate.run();
+        benchmark.run("Entity.move", count, batch, nothing, () -> {
+            simulation.moveEntities(TICK);
+            simulation.moveEntities(-TICK);
+            return simulation.getEntities().size();
+        });
+
+        CollisionHandler counter = (me, him) -> pairs++;
+        Broadphase grid = new UniformGridBroadphase(Simulation.WIDTH, Simulation.HEIGHT, 64);
+        grid.setPool(pool);
+        benchmark.run("collisions (grid)", count, slowBatch, nothing, () -> {
+            grid.findPairs(simulation.getEntities(), counter);
+            return pairs;
+        });
+
+        if (count <= BRUTE_FORCE_LIMIT) {
+            Broadphase bruteForce = new BruteForceBroadphase();
+            benchmark.run("collisions (brute force)", count, Math.max(1, 10000 / count), nothing, () -> {
+                bruteForce.findPairs(simulation.getEntities(), counter);
+                return pairs;
+            });
+        }
+
+        // every kill speeds all the aliens up, so start from a fresh population every batch
+        benchmark.run("notifyAlienKilled", count, slowBatch, populate, () -> {
+            simulation.notifyAlienKilled();
+            return simulation.getAlienCount();
+        });
+
+        // the same buffer is reused for every save, as a rewinding search would
+        populate.run();
+        ByteBuffer state = ByteBuffer.allocateDirect(simulation.getStateSizeBound());
+        benchmark.run("saveState", count, slowBatch, nothing, () -> {
+            state.clear();
+            simulation.saveState(state);
+            return state.position();
+        });
+
+        benchmark.run("restoreState", count, slowBatch, nothing, () -> {
+            state.flip();
+            simulation.restoreState(state);
+            return simulation.getEntities().size();
+        });
+
+        benchmark.run("tick", count, slowBatch, populate, () -> {
+            simulation.tick(TICK);
+            return simulation.getEntities().size();
+        });
+    }
+
+    /**
+     * Fill the simulation with a formation of aliens scattered over the top of the playfield, with one
+     * shot in a hundred entities so there is something to collide
+     *
+     * @param simulation The simulation to fill
+     * @param count The number of entities to add
+     */
+    private static void populate(Simulation simulation, int count) {
+        Random random = new Random(42);
+        simulation.clearAliens();
+        Formation formation = simulation.createFormation(0, 0);
+
+        for (int i = 0; i < count; i++) {
+            int x = 10 + random.nextInt(Simulation.WIDTH - 70);
+            int y = random.nextInt(450);
+            Entity entity = i % 100 == 99
+                    ? new ShotEntity(simulation, "sprites/shot.gif", x, y)
+                    : new AlienEntity(simulation, formation, "sprites/alien.gif", x, y);
+
+            simulation.addEntity(entity);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package sistema.bench;
+
+import sistema.SpriteDiskCache;
+import sistema.SpriteStore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures how long a cold start takes to load the sprites, with and without the
+ * {@link SpriteDiskCache}. A cold start can only be measured once per JVM, so every run is a fresh
+ * JVM started on the same classpath: a few runs decoding the images, one that builds the cache, then
+ * a few loading from it. The median time to preload the manifest and the median JVM uptime once it's
+ * loaded are reported for each.
+ *
+ * Configured with -Dbench.runs (default 5) and -Dsprites.cache=<file> for the cache file to build
+ * (default a temporary file, deleted at the end).
+ */
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // a child run loads the manifest, with the cache if one is given, and prints its timings
+        if (args.length > 0 && args[0].equals("child")) {
+            child(args.length > 1 ? Paths.get(args[1]) : null);
+            return;
+        }
+
+        int runs = Integer.getInteger("bench.runs", 5);
+        String property = System.getProperty("sprites.cache");
+        Path cache = property != null ? Paths.get(property) : Files.createTempFile("sprites", ".cache");
+        Files.deleteIfExists(cache);
+
+        report("decoding", runs, null);
+        report("building the cache", 1, cache);
+        report("from the cache", runs, cache);
+
+        System.out.printf("cache file: %s, %d bytes%n", cache, Files.size(cache));
+        if (property == null) {
+            Files.delete(cache);
+        }
+    }
+
+    /**
+     * Start a number of child JVMs and report the median of their timings
+     *
+     * @param name The name of the configuration
+     * @param runs The number of JVMs to start
+     * @param cache The cache file to load through, null for none
+     */
+    private static void report(String name, int runs, Path cache) throws IOException, InterruptedException {
+        List<Double> loads = new ArrayList<>();
+        List<Double> uptimes = new ArrayList<>();
+
+        for (int i = 0; i < runs; i++) {
+            List<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            command.add("-Djava.awt.headless=true");
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(StartupBenchmark.class.getName());
+            command.add("child");
+            if (cache != null) {
+                command.add(cache.toString());
+            }
+
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            String line;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                line = reader.readLine();
+            }
+            if (process.waitFor() != 0 || line == null || !line.startsWith("startup ")) {
+                throw new IllegalStateException("The child run failed: " + line);
+            }
+
+            String[] fields = line.split(" ");
+            loads.add(Double.parseDouble(fields[1]));
+            uptimes.add(Double.parseDouble(fields[2]));
+        }
+
+        System.out.printf("%-20s sprites loaded in %6.1f ms, JVM up %6.1f ms (median of %d)%n",
+                name, median(loads), median(uptimes), runs);
+    }
+
+    private static double median(List<Double> values) {
+        Collections.sort(values);
+        return values.get(values.size() / 2);
+    }
+
+    /**
+     * Load the manifest as the game does at startup and print the time it took
+     *
+     * @param cache The cache file to load through, null for none
+     */
+    private static void child(Path cache) {
+        long start = System.nanoTime();
+
+        if (cache != null) {
+            SpriteStore.get().setDiskCache(new SpriteDiskCache(cache));
+        }
+        SpriteStore.get().preloadManifest("sprites/manifest.txt").join();
+
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format(Locale.ROOT, "startup %.2f %d", elapsed / 1e6, ManagementFactory.getRuntimeMXBean().getUptime()));
+    }
+}
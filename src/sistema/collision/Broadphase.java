@@ -0,0 +1,46 @@
+package sistema.collision;
+
+import sistema.entities.Entity;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A broadphase is responsible for cutting down the number of entity pairs that reach the
+ * narrowphase test in {@link Entity#collidesWith(Entity)}. Implementations must report every
+ * colliding pair exactly once, with the entity that comes first in the list as the first argument,
+ * and in order of the first entity's index, then the second's. A shot that touches two aliens at
+ * once then hits the same one whichever broadphase found them.
+ *
+ * A broadphase can also sweep: rather than testing where the entities ended up, it tests the whole path
+ * each one took during the tick (see {@link Sweep}) and reports the pairs in the order they touched.
+ */
+public interface Broadphase {
+
+    /**
+     * Find every colliding pair among the given entities and report it to the handler
+     *
+     * @param entities The entities to check
+     * @param handler The handler to notify of each colliding pair
+     */
+    void findPairs(List<Entity> entities, CollisionHandler handler);
+
+    /**
+     * Let the broadphase search for pairs in parallel. Either way the handler is only ever called from
+     * the thread calling {@link #findPairs(List, CollisionHandler)}, in the same order. Broadphases that
+     * can't search in parallel ignore this.
+     *
+     * @param pool The pool to search on, null to search on the calling thread
+     */
+    default void setPool(ForkJoinPool pool) {
+    }
+
+    /**
+     * Switch between testing where the entities ended up and testing the paths they took during the
+     * tick, so fast movers can't pass through each other. Broadphases that can't sweep ignore this.
+     *
+     * @param swept True to sweep
+     */
+    default void setSwept(boolean swept) {
+    }
+}
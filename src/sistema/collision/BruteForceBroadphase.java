@@ -0,0 +1,56 @@
+package sistema.collision;
+
+import sistema.entities.Entity;
+import sistema.metrics.Metrics;
+
+import java.util.List;
+
+/**
+ * The reference broadphase: compare every entity against every other entity. It is O(n^2) but
+ * trivially correct, so it is kept around to compare the results of the faster implementations.
+ */
+public class BruteForceBroadphase implements Broadphase {
+
+    /** True if the entities' paths are tested rather than where they ended up */
+    private boolean swept = false;
+
+    /** The contacts of a swept search, waiting to be sorted by time */
+    private final Contacts contacts = new Contacts();
+
+    @Override
+    public void setSwept(boolean swept) {
+        this.swept = swept;
+    }
+
+    @Override
+    public void findPairs(List<Entity> entities, CollisionHandler handler) {
+        long tested = 0;
+
+        for (int p = 0; p < entities.size(); p++) {
+            for (int s = p + 1; s < entities.size(); s++) {
+                Entity me = entities.get(p);
+                Entity him = entities.get(s);
+
+                if (!me.canCollideWith(him)) {
+                    continue;
+                }
+
+                tested++;
+                if (swept) {
+                    double time = Sweep.timeOfImpact(me, him);
+                    if (time != Sweep.NO_CONTACT) {
+                        contacts.add(p, s, time);
+                    }
+                } else if (me.collidesWith(him)) {
+                    handler.collision(me, him, 1);
+                }
+            }
+        }
+
+        if (swept) {
+            contacts.dispatch(entities, handler);
+        }
+
+        Metrics.count(Metrics.PAIRS_TESTED, tested);
+    }
+}
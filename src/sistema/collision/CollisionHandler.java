@@ -0,0 +1,30 @@
+package sistema.collision;
+
+import sistema.entities.Entity;
+
+/**
+ * Receives the pairs of entities a broadphase found to be colliding
+ */
+public interface CollisionHandler {
+
+    /**
+     * Notification that two entities collided this loop
+     *
+     * @param me The entity that appears first in the entity list
+     * @param him The entity that appears later in the entity list
+     */
+    void collision(Entity me, Entity him);
+
+    /**
+     * Notification that two entities collided this loop, and when. Broadphases always call this one,
+     * handlers that don't care when override the other.
+     *
+     * @param me The entity that appears first in the entity list
+     * @param him The entity that appears later in the entity list
+     * @param time When during the tick the two first touched, from 0 to 1. Discrete tests only look at
+     *             the end of the tick so they always report 1.
+     */
+    default void collision(Entity me, Entity him, double time) {
+        collision(me, him);
+    }
+}
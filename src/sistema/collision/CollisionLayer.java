@@ -0,0 +1,40 @@
+package sistema.collision;
+
+/**
+ * The collision layers an entity can belong to. Each entity lives on exactly one layer and carries
+ * a mask of the layers it is interested in. A pair of entities is only handed to the narrowphase
+ * if at least one of them is interested in the other's layer, so pairs like alien-alien or
+ * shot-shot are never tested.
+ */
+public final class CollisionLayer {
+
+    /** The layer used by entities that don't declare one */
+    public static final int DEFAULT = 1;
+
+    /** The layer of the player's ship */
+    public static final int SHIP = 1 << 1;
+
+    /** The layer of the aliens */
+    public static final int ALIEN = 1 << 2;
+
+    /** The layer of the player's shots */
+    public static final int SHOT = 1 << 3;
+
+    /** A mask matching every layer */
+    public static final int ALL = -1;
+
+    private CollisionLayer() {}
+
+    /**
+     * Check if two entities on the given layers should ever be tested against each other
+     *
+     * @param layer The layer of the first entity
+     * @param mask The collision mask of the first entity
+     * @param otherLayer The layer of the second entity
+     * @param otherMask The collision mask of the second entity
+     * @return True if the pair should reach the narrowphase
+     */
+    public static boolean interacts(int layer, int mask, int otherLayer, int otherMask) {
+        return (mask & otherLayer) != 0 || (otherMask & layer) != 0;
+    }
+}
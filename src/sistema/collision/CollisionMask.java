@@ -0,0 +1,153 @@
+package sistema.collision;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+/**
+ * A one bit per pixel mask of the opaque pixels of a sprite, used for pixel perfect collision tests
+ * once two bounding boxes are known to overlap. Each row is packed into longs, lowest bit first, so
+ * comparing two rows is a handful of ANDs rather than a test per pixel.
+ */
+public class CollisionMask {
+
+    /** The width of the mask in pixels */
+    private final int width;
+
+    /** The height of the mask in pixels */
+    private final int height;
+
+    /** The number of longs used by each row */
+    private final int wordsPerRow;
+
+    /** The bits of the mask, row after row */
+    private final long[] bits;
+
+    private CollisionMask(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.bits = new long[wordsPerRow * height];
+    }
+
+    /**
+     * Build the mask of an image. A pixel is solid if it isn't fully transparent, which matches how a
+     * {@link java.awt.Transparency#BITMASK} image draws it.
+     *
+     * @param image The image to build the mask from
+     * @return The mask of the image
+     */
+    public static CollisionMask fromImage(BufferedImage image) {
+        CollisionMask mask = new CollisionMask(image.getWidth(), image.getHeight());
+        int[] row = new int[mask.width];
+
+        for (int y = 0; y < mask.height; y++) {
+            image.getRGB(0, y, mask.width, 1, row, 0, mask.width);
+
+            for (int x = 0; x < mask.width; x++) {
+                if ((row[x] >>> 24) != 0) {
+                    mask.bits[y * mask.wordsPerRow + (x >>> 6)] |= 1L << (x & 63);
+                }
+            }
+        }
+
+        return mask;
+    }
+
+    /**
+     * Read a mask written by {@link #write(ByteBuffer)}
+     *
+     * @param in The buffer to read from, at the mask's position
+     * @param width The width of the mask
+     * @param height The height of the mask
+     * @return The mask
+     */
+    public static CollisionMask read(ByteBuffer in, int width, int height) {
+        CollisionMask mask = new CollisionMask(width, height);
+        in.asLongBuffer().get(mask.bits);
+        in.position(in.position() + mask.bits.length * 8);
+
+        return mask;
+    }
+
+    /**
+     * Write the bits of the mask, its size isn't written
+     *
+     * @param out The buffer to write to
+     */
+    public void write(ByteBuffer out) {
+        out.asLongBuffer().put(bits);
+        out.position(out.position() + bits.length * 8);
+    }
+
+    /**
+     * Get the number of bytes {@link #write(ByteBuffer)} writes for a mask of a size
+     *
+     * @param width The width of the mask
+     * @param height The height of the mask
+     * @return The size in bytes
+     */
+    public static int getSizeInBytes(int width, int height) {
+        return ((width + 63) >>> 6) * height * 8;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Check if two masks placed at the given locations share any solid pixel
+     *
+     * @param a The first mask
+     * @param ax The x location of the first mask
+     * @param ay The y location of the first mask
+     * @param b The second mask
+     * @param bx The x location of the second mask
+     * @param by The y location of the second mask
+     * @return True if any pixel is solid in both masks
+     */
+    public static boolean overlaps(CollisionMask a, int ax, int ay, CollisionMask b, int bx, int by) {
+        int left = Math.max(ax, bx);
+        int right = Math.min(ax + a.width, bx + b.width);
+        int top = Math.max(ay, by);
+        int bottom = Math.min(ay + a.height, by + b.height);
+
+        for (int y = top; y < bottom; y++) {
+            int rowA = y - ay;
+            int rowB = y - by;
+
+            for (int x = left; x < right; x += 64) {
+                int count = Math.min(64, right - x);
+
+                if ((a.bits(rowA, x - ax, count) & b.bits(rowB, x - bx, count)) != 0) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Get up to 64 bits of a row starting at any column
+     *
+     * @param row The row to read
+     * @param column The first column to read
+     * @param count The number of bits to read, at most 64
+     * @return The bits, the first column in the lowest bit
+     */
+    private long bits(int row, int column, int count) {
+        int index = row * wordsPerRow + (column >>> 6);
+        int shift = column & 63;
+        long value = bits[index] >>> shift;
+
+        if (shift != 0 && (column >>> 6) + 1 < wordsPerRow) {
+            value |= bits[index + 1] << (64 - shift);
+        }
+
+        return count == 64 ? value : value & ((1L << count) - 1);
+    }
+}
@@ -0,0 +1,75 @@
+package sistema.collision;
+
+import sistema.entities.Entity;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The contacts found by a swept search, collected so they can be handed over in the order they
+ * happened during the tick rather than the order they were found. Contacts at the same moment go in
+ * order of their first entity's index, then their second's, so every broadphase hands them over the
+ * same way.
+ */
+class Contacts {
+
+    /** The resolution times of impact are sorted at, finer than any tick needs */
+    private static final double TIME_STEPS = 1 << 24;
+
+    /** The pairs, two entity indices per contact */
+    private int[] pairs = new int[64];
+
+    /** The time of impact of each contact */
+    private double[] times = new double[32];
+
+    /** The sort keys: the time of impact in the high half, the contact's index in the low half */
+    private long[] order = new long[32];
+
+    private int count = 0;
+
+    void add(int a, int b, double time) {
+        if (times.length == count) {
+            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+            times = Arrays.copyOf(times, times.length * 2);
+            order = Arrays.copyOf(order, order.length * 2);
+        }
+
+        pairs[count * 2] = a;
+        pairs[count * 2 + 1] = b;
+        times[count] = time;
+        count++;
+    }
+
+    /**
+     * Hand every contact to the handler, earliest first, and forget them
+     */
+    void dispatch(List<Entity> entities, CollisionHandler handler) {
+        for (int i = 0; i < count; i++) {
+            order[i] = ((long) (times[i] * TIME_STEPS) << 32) | i;
+        }
+        Arrays.sort(order, 0, count);
+
+        // contacts at the same moment are rare, so an insertion sort puts them in entity order
+        for (int i = 1; i < count; i++) {
+            long key = order[i];
+            int j = i - 1;
+            while (j >= 0 && (order[j] >>> 32) == (key >>> 32) && comparePairs((int) order[j], (int) key) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = key;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int contact = (int) order[i];
+            handler.collision(entities.get(pairs[contact * 2]), entities.get(pairs[contact * 2 + 1]), times[contact]);
+        }
+
+        count = 0;
+    }
+
+    private int comparePairs(int a, int b) {
+        int first = Integer.compare(pairs[a * 2], pairs[b * 2]);
+        return first != 0 ? first : Integer.compare(pairs[a * 2 + 1], pairs[b * 2 + 1]);
+    }
+}
@@ -0,0 +1,397 @@
+package sistema.collision;
+
+import sistema.RangeTask;
+import sistema.entities.Entity;
+import sistema.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A broadphase that buckets entities into a uniform grid laid over the playfield, so only entities
+ * sharing a cell are tested against each other. Entities outside the playfield are clamped into the
+ * border cells.
+ *
+ * The grid is rebuilt every loop with a counting sort into flat arrays, so once the arrays have grown
+ * to fit the scene no allocation happens. A pair that shares several cells is only tested in the
+ * cell holding the top left corner of the two boxes' intersection, so each pair is reported once.
+ *
+ * Crowded cells are split up once more by collision layer, and only layers that can interact are
+ * tested against each other. A cell full of aliens with a few shots among them then costs aliens
+ * times shots rather than aliens squared.
+ *
+ * Given a pool, the cells are tested in parallel once there are enough entities to be worth it. Each
+ * task collects its colliding pairs into a buffer of its own. Afterwards the pairs from every buffer are
+ * sorted by entity index and handed to the handler on the calling thread, so they come out in the same
+ * order as from {@link BruteForceBroadphase}, however the cells were split up.
+ *
+ * When sweeping, each entity is filed under the box it swept through this tick rather than where it
+ * ended up, pairs are tested with {@link Sweep#timeOfImpact(Entity, Entity)}, and the contacts are
+ * handed over in the order they happened.
+ */
+public class UniformGridBroadphase implements Broadphase {
+
+    /** The number of entries above which a cell is split up by collision layer */
+    private static final int CROWDED_CELL = 16;
+
+    /** The number of entities below which the cells are always tested sequentially */
+    private static final int PARALLEL_THRESHOLD = 2048;
+
+    /** The size of a cell in pixels */
+    private final int cellSize;
+
+    /** The number of cells across the playfield */
+    private final int columns;
+
+    /** The number of cells down the playfield */
+    private final int rows;
+
+    /** The index into {@link #cellEntries} where each cell's entries start */
+    private final int[] cellStart;
+
+    /** The number of entries in each cell, also used as a fill cursor while building */
+    private final int[] cellCount;
+
+    /** The entity indices of every cell, stored back to back */
+    private int[] cellEntries = new int[256];
+
+    /** The bounds of each entity this loop, four ints per entity: min x, min y, max x, max y */
+    private int[] bounds = new int[256];
+
+    /** The collision layer and mask of each entity this loop */
+    private int[] layers = new int[64];
+    private int[] masks = new int[64];
+
+    /** True if the entities' paths are tested rather than where they ended up */
+    private boolean swept = false;
+
+    /** The contacts of a swept search, gathered from every range to be sorted by time */
+    private final Contacts contacts = new Contacts();
+
+    /** The pool the cells are tested on, null to always test them on the calling thread */
+    private ForkJoinPool pool;
+
+    /** The colliding pairs of every range, as first and second entity index packed into a long so they sort */
+    private long[] found = new long[64];
+
+    /** The scratch space of each range of cells, the first one is also used when running sequentially */
+    private final ArrayList<Scratch> scratches = new ArrayList<>();
+
+    /**
+     * Create a new grid covering a playfield
+     *
+     * @param width The width of the playfield in pixels
+     * @param height The height of the playfield in pixels
+     * @param cellSize The size of a cell in pixels, ideally a bit larger than the biggest sprite
+     */
+    public UniformGridBroadphase(int width, int height, int cellSize) {
+        this.cellSize = cellSize;
+        this.columns = (width + cellSize - 1) / cellSize;
+        this.rows = (height + cellSize - 1) / cellSize;
+        this.cellStart = new int[columns * rows];
+        this.cellCount = new int[columns * rows];
+        this.scratches.add(new Scratch());
+    }
+
+    @Override
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void setSwept(boolean swept) {
+        this.swept = swept;
+    }
+
+    @Override
+    public void findPairs(List<Entity> entities, CollisionHandler handler) {
+        int size = entities.size();
+
+        if (bounds.length < size * 4) {
+            bounds = new int[size * 8];
+        }
+        if (layers.length < size) {
+            layers = new int[size * 2];
+            masks = new int[size * 2];
+        }
+
+        // first pass, work out the bounds of each entity and count how many cells it touches
+        Arrays.fill(cellCount, 0);
+        int total = 0;
+
+        for (int i = 0; i < size; i++) {
+            Entity entity = entities.get(i);
+            int minX;
+            int minY;
+            int maxX;
+            int maxY;
+
+            if (swept) {
+                minX = Sweep.sweptMinX(entity);
+                minY = Sweep.sweptMinY(entity);
+                maxX = Sweep.sweptMaxX(entity);
+                maxY = Sweep.sweptMaxY(entity);
+            } else {
+                minX = (int) entity.getX();
+                minY = (int) entity.getY();
+                maxX = minX + entity.getWidth() - 1;
+                maxY = minY + entity.getHeight() - 1;
+            }
+
+            bounds[i * 4] = minX;
+            bounds[i * 4 + 1] = minY;
+            bounds[i * 4 + 2] = maxX;
+            bounds[i * 4 + 3] = maxY;
+            layers[i] = entity.getCollisionLayer();
+            masks[i] = entity.getCollisionMask();
+
+            for (int cy = row(minY); cy <= row(maxY); cy++) {
+                for (int cx = column(minX); cx <= column(maxX); cx++) {
+                    cellCount[cy * columns + cx]++;
+                    total++;
+                }
+            }
+        }
+
+        if (cellEntries.length < total) {
+            cellEntries = new int[total * 2];
+        }
+
+        // turn the counts into start offsets, then reset the counts so they can be used as cursors
+        int offset = 0;
+        for (int c = 0; c < cellStart.length; c++) {
+            cellStart[c] = offset;
+            offset += cellCount[c];
+            cellCount[c] = 0;
+        }
+
+        // second pass, drop each entity index into the cells it touches. Since we walk the list in
+        // order, each cell ends up sorted by entity index
+        for (int i = 0; i < size; i++) {
+            for (int cy = row(bounds[i * 4 + 1]); cy <= row(bounds[i * 4 + 3]); cy++) {
+                for (int cx = column(bounds[i * 4]); cx <= column(bounds[i * 4 + 2]); cx++) {
+                    int cell = cy * columns + cx;
+                    cellEntries[cellStart[cell] + cellCount[cell]++] = i;
+                }
+            }
+        }
+
+        // finally test the pairs within each cell, split into ranges of cells if running in parallel
+        int ranges = 1;
+        if (pool != null && size >= PARALLEL_THRESHOLD) {
+            ranges = Math.min(cellStart.length, pool.getParallelism() * 4);
+        }
+        while (scratches.size() < ranges) {
+            scratches.add(new Scratch());
+        }
+
+        if (ranges == 1) {
+            testCells(0, cellStart.length, entities, scratches.get(0));
+        } else {
+            int cells = cellStart.length;
+            int pieces = ranges;
+            RangeTask.run(pool, 0, pieces, 1, (start, end) -> {
+                for (int r = start; r < end; r++) {
+                    testCells(cells * r / pieces, cells * (r + 1) / pieces, entities, scratches.get(r));
+                }
+            });
+        }
+
+        // gather the pairs from every range. Swept contacts are put in order by the contacts, the rest
+        // are sorted by entity index
+        long tested = 0;
+        int count = 0;
+        for (int r = 0; r < ranges; r++) {
+            Scratch scratch = scratches.get(r);
+
+            for (int p = 0; p < scratch.pairCount; p++) {
+                if (swept) {
+                    contacts.add(scratch.pairs[p * 2], scratch.pairs[p * 2 + 1], scratch.times[p]);
+                } else {
+                    if (found.length == count) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = ((long) scratch.pairs[p * 2] << 32) | scratch.pairs[p * 2 + 1];
+                }
+            }
+
+            tested += scratch.tested;
+            scratch.pairCount = 0;
+            scratch.tested = 0;
+        }
+
+        // then hand them over, the handler is free to change the game as it likes
+        if (swept) {
+            contacts.dispatch(entities, handler);
+        } else {
+            Arrays.sort(found, 0, count);
+            for (int p = 0; p < count; p++) {
+                handler.collision(entities.get((int) (found[p] >>> 32)), entities.get((int) found[p]), 1);
+            }
+        }
+
+        Metrics.count(Metrics.PAIRS_TESTED, tested);
+    }
+
+    /**
+     * Test the pairs in a range of cells, collecting the colliding ones into the scratch space
+     */
+    private void testCells(int from, int to, List<Entity> entities, Scratch scratch) {
+        for (int cell = from; cell < to; cell++) {
+            int start = cellStart[cell];
+            int end = start + cellCount[cell];
+
+            if (end - start > CROWDED_CELL) {
+                testCrowdedCell(cell, entities, scratch);
+                continue;
+            }
+
+            for (int p = start; p < end; p++) {
+                for (int s = p + 1; s < end; s++) {
+                    test(cell, cellEntries[p], cellEntries[s], entities, scratch);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test the pairs in a cell with a lot of entries. The entries are sorted into a bucket per
+     * collision layer first, and buckets with nothing interested in each other are skipped outright.
+     */
+    private void testCrowdedCell(int cell, List<Entity> entities, Scratch scratch) {
+        int start = cellStart[cell];
+        int end = start + cellCount[cell];
+        int[] bucketCount = scratch.bucketCount;
+        int[] bucketStart = scratch.bucketStart;
+
+        // count the entries on each layer and what the layers are interested in
+        Arrays.fill(bucketCount, 0);
+        Arrays.fill(scratch.bucketLayers, 0);
+        Arrays.fill(scratch.bucketMasks, 0);
+        for (int p = start; p < end; p++) {
+            int entity = cellEntries[p];
+            int bucket = bucket(layers[entity]);
+
+            bucketCount[bucket]++;
+            scratch.bucketLayers[bucket] |= layers[entity];
+            scratch.bucketMasks[bucket] |= masks[entity];
+        }
+
+        // then sort the entries into the buckets, keeping them in entity order within each bucket
+        if (scratch.sorted.length < end - start) {
+            scratch.sorted = new int[(end - start) * 2];
+        }
+        int offset = 0;
+        for (int b = 0; b < bucketCount.length; b++) {
+            bucketStart[b] = offset;
+            offset += bucketCount[b];
+            bucketCount[b] = 0;
+        }
+        for (int p = start; p < end; p++) {
+            int entity = cellEntries[p];
+            int bucket = bucket(layers[entity]);
+            scratch.sorted[bucketStart[bucket] + bucketCount[bucket]++] = entity;
+        }
+
+        int[] sorted = scratch.sorted;
+        for (int a = 0; a < bucketCount.length; a++) {
+            if (bucketCount[a] == 0) {
+                continue;
+            }
+
+            for (int b = a; b < bucketCount.length; b++) {
+                if (bucketCount[b] == 0 || !CollisionLayer.interacts(
+                        scratch.bucketLayers[a], scratch.bucketMasks[a],
+                        scratch.bucketLayers[b], scratch.bucketMasks[b])) {
+                    continue;
+                }
+
+                int aEnd = bucketStart[a] + bucketCount[a];
+                int bEnd = bucketStart[b] + bucketCount[b];
+
+                for (int p = bucketStart[a]; p < aEnd; p++) {
+                    for (int s = a == b ? p + 1 : bucketStart[b]; s < bEnd; s++) {
+                        int first = Math.min(sorted[p], sorted[s]);
+                        int second = Math.max(sorted[p], sorted[s]);
+                        test(cell, first, second, entities, scratch);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test a pair of entities, the first must come before the second in the list
+     */
+    private void test(int cell, int a, int b, List<Entity> entities, Scratch scratch) {
+        if (!CollisionLayer.interacts(layers[a], masks[a], layers[b], masks[b])) {
+            return;
+        }
+
+        // only the cell holding the corner of the intersection owns the pair
+        int cornerX = Math.max(bounds[a * 4], bounds[b * 4]);
+        int cornerY = Math.max(bounds[a * 4 + 1], bounds[b * 4 + 1]);
+        if (row(cornerY) * columns + column(cornerX) != cell) {
+            return;
+        }
+
+        scratch.tested++;
+        if (swept) {
+            double time = Sweep.timeOfImpact(entities.get(a), entities.get(b));
+            if (time != Sweep.NO_CONTACT) {
+                scratch.add(a, b, time);
+            }
+        } else if (entities.get(a).collidesWith(entities.get(b))) {
+            scratch.add(a, b, 1);
+        }
+    }
+
+    /**
+     * Get the bucket of a collision layer, an entity lives on a single layer so this is the index of its bit
+     */
+    private static int bucket(int layer) {
+        return layer == 0 ? 0 : Integer.numberOfTrailingZeros(layer);
+    }
+
+    private int column(int x) {
+        return Math.max(0, Math.min(columns - 1, Math.floorDiv(x, cellSize)));
+    }
+
+    private int row(int y) {
+        return Math.max(0, Math.min(rows - 1, Math.floorDiv(y, cellSize)));
+    }
+
+    /**
+     * The working space of one range of cells, so ranges can be tested in parallel without sharing anything
+     */
+    private static class Scratch {
+
+        /** The colliding pairs found, two entity indices per pair, and when they touched */
+        private int[] pairs = new int[64];
+        private double[] times = new double[32];
+        private int pairCount = 0;
+
+        /** The number of pairs that reached the narrowphase */
+        private long tested = 0;
+
+        /** The per-layer buckets of a crowded cell */
+        private final int[] bucketCount = new int[32];
+        private final int[] bucketStart = new int[32];
+        private final int[] bucketLayers = new int[32];
+        private final int[] bucketMasks = new int[32];
+        private int[] sorted = new int[64];
+
+        private void add(int a, int b, double time) {
+            if (pairs.length < pairCount * 2 + 2) {
+                pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                times = Arrays.copyOf(times, times.length * 2);
+            }
+            pairs[pairCount * 2] = a;
+            pairs[pairCount * 2 + 1] = b;
+            times[pairCount] = time;
+            pairCount++;
+        }
+    }
+}
@@ -1,46 +1,133 @@
 package sistema.entities;
 
-import sistema.Game;
+import sistema.Simulation;
+import sistema.collision.CollisionLayer;
 
 public class AlienEntity extends Entity {
 
-    /** The speed at which the alien moves horizontally */
-    private double moveSpeed = 75;
+    private Simulation game;
 
-    private Game game;
+    /** The reference to the sprite of this alien */
+    private final String ref;
 
-    public AlienEntity(Game game, String ref, int x, int y) {
-        super(ref, x, y);
+    /** The formation this alien moves with, null until it joins one */
+    private Formation formation;
+
+    /** The position of this alien in its formation's member list */
+    private int formationIndex;
+
+    /** The offset of this alien from the location of its formation */
+    private double offsetX;
+    private double offsetY;
+
+    /**
+     * Create a new alien and add it to a formation
+     *
+     * @param game The game the alien is in
+     * @param formation The formation the alien moves with
+     * @param ref The reference to the sprite of the alien
+     * @param x The x location of the alien
+     * @param y The y location of the alien
+     */
+    public AlienEntity(Simulation game, Formation formation, String ref, int x, int y) {
+        super(game.getEntityStore(), ref, x, y);
 
         this.game = game;
-        dx = -moveSpeed;
+        this.ref = ref;
+        setCollisionLayer(CollisionLayer.ALIEN, CollisionLayer.SHIP | CollisionLayer.SHOT);
+
+        joinFormation(formation);
     }
 
-    public void move(long delta) {
-        // if we have reached the left hand side of the screen and are moving left then request a logic update
-        if ((dx < 0) && (x < 10)) {
-            game.updateLogic();
-        }
+    /**
+     * Create a new alien outside any formation, e.g. for a pool. It must be spawned and join a
+     * formation before it moves.
+     *
+     * @param game The game the alien is in
+     * @param ref The reference to the sprite of the alien
+     */
+    public AlienEntity(Simulation game, String ref) {
+        super(game.getEntityStore(), ref, 0, 0);
 
-        // and vice versa, if we have reached the right hand side of the screen and are moving right,
-        // request a logic update
-        if ((dx > 0) && (x > 750)) {
-            game.updateLogic();
-        }
+        this.game = game;
+        this.ref = ref;
+        setCollisionLayer(CollisionLayer.ALIEN, CollisionLayer.SHIP | CollisionLayer.SHOT);
+    }
 
-        super.move(delta);
+    /**
+     * Join a formation at this alien's current location, and take up its speed
+     *
+     * @param formation The formation to join
+     */
+    public void joinFormation(Formation formation) {
+        formation.join(this);
+        setHorizontalMovement(formation.getHorizontalMovement());
+    }
+
+    public String getSpriteRef() {
+        return ref;
+    }
+
+    void setFormation(Formation formation, int index, double offsetX, double offsetY) {
+        this.formation = formation;
+        this.formationIndex = index;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+    }
+
+    int getFormationIndex() {
+        return formationIndex;
+    }
+
+    void setFormationIndex(int formationIndex) {
+        this.formationIndex = formationIndex;
+    }
+
+    public double getOffsetX() {
+        return offsetX;
+    }
+
+    public double getOffsetY() {
+        return offsetY;
+    }
+
+    /**
+     * Move this alien's place in its formation, e.g. when restoring a snapshot of the game
+     *
+     * @param offsetX The offset from the formation's x location
+     * @param offsetY The offset from the formation's y location
+     */
+    public void setOffset(double offsetX, double offsetY) {
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        formation.invalidateBounds();
+    }
+
+    public Formation getFormation() {
+        return formation;
+    }
+
+    public void move(double delta) {
+        // the formation has already moved, just take up our place in it
+        follow();
+    }
+
+    /**
+     * Take up this alien's place in its formation
+     */
+    void follow() {
+        store.setPosition(slot, formation.getX() + offsetX, formation.getY() + offsetY);
+        store.dx[slot] = formation.getHorizontalMovement();
     }
 
     @Override
-    public void doLogic() {
-        // swap over horizontal movement and move down the screen a bit
-        dx = -dx;
-        y += 10;
-
-        // if we've reached the bottom of the screen then the player dies
-        if (y > 570) {
-            // game.notifyDeath();
+    public void release() {
+        if (slot != -1 && formation != null) {
+            formation.leave(this);
+            formation = null;
         }
+
+        super.release();
     }
 
     public void collidedWith(Entity other) {}
@@ -1,7 +1,10 @@
 package sistema.entities;
 
 import sistema.Sprite;
+import sistema.SpriteBatch;
 import sistema.SpriteStore;
+import sistema.collision.CollisionLayer;
+import sistema.collision.CollisionMask;
 
 import java.awt.*;
 
@@ -14,98 +17,329 @@ import java.awt.*;
  * are integers. However, using double means that an entity can move a partial pixel. It doesn't
  * of course mean that they will be displayed half way through a pixel but allows us to not lose
  * accuracy as we move.
+ *
+ * The state of an entity doesn't live on the entity itself but in a slot of an {@link EntityStore}
+ * shared by every entity of the game, the entity is only a handle onto that slot.
  */
 
 public abstract class Entity {
 
-    protected double x;
-    protected double y;
+    /** The store holding the state of this entity */
+    protected final EntityStore store;
+
+    /** The slot of this entity in the store, -1 once released */
+    protected int slot;
+
     protected Sprite sprite;
-    /** The current speed of this entity horizontally (pixels/sec) */
-    protected double dx;
-    /** The current speed of this entity vertically (pixels/sec) */
-    protected double dy;
 
-    /** The rectangle used fro this entity during collisions resolution */
-    private Rectangle me = new Rectangle();
+    /** The collision layer of this entity, kept here as well so a respawned entity's slot can be set up again */
+    private int collisionLayer = CollisionLayer.DEFAULT;
+
+    /** The collision mask of this entity, kept here as well so a respawned entity's slot can be set up again */
+    private int collisionMask = CollisionLayer.ALL;
+
+    /** The position of this entity in the simulation's entity list, -1 if it isn't in one */
+    private int index = -1;
 
-    /** The rectangle used for other entities during collision resolution */
-    private Rectangle him = new Rectangle();
+    /** The number this entity was given when it last entered the simulation, a respawned entity gets a new one */
+    private int spawnId;
 
-    public Entity(String ref, int x, int y) {
+    /** True once this entity has been queued for removal */
+    private boolean removed = false;
+
+    /** The pool this entity goes back to once released, null if it isn't pooled */
+    private EntityPool<?> pool;
+
+    public Entity(EntityStore store, String ref, int x, int y) {
+        this.store = store;
+        this.slot = store.allocate();
         this.sprite = SpriteStore.get().getSprite(ref);
-        this.x = x;
-        this.y = y;
+
+        setUpSlot(x, y);
+    }
+
+    /**
+     * Bring this entity back to life at a new location, claiming a new slot if its old one was
+     * released. Pooled entities are respawned rather than created again, subclasses should override
+     * this to reset their own state.
+     *
+     * @param x The x location to spawn at
+     * @param y The y location to spawn at
+     */
+    public void spawn(int x, int y) {
+        if (slot == -1) {
+            slot = store.allocate();
+        }
+
+        setUpSlot(x, y);
+        removed = false;
+    }
+
+    private void setUpSlot(int x, int y) {
+        store.setPosition(slot, x, y);
+        store.savePosition(slot);
+        store.dx[slot] = 0;
+        store.dy[slot] = 0;
+        store.width[slot] = sprite.getWidth();
+        store.height[slot] = sprite.getHeight();
+        store.type[slot] = collisionLayer;
+        store.mask[slot] = collisionMask;
     }
 
     public double getX() {
-        return x;
+        return store.x[slot];
     }
 
     public void setX(double x) {
-        this.x = x;
+        store.setPosition(slot, x, store.y[slot]);
     }
 
     public double getY() {
-        return y;
+        return store.y[slot];
     }
 
     public void setY(double y) {
-        this.y = y;
+        store.setPosition(slot, store.x[slot], y);
+    }
+
+    public double getPreviousX() {
+        return store.previousX[slot];
+    }
+
+    public double getPreviousY() {
+        return store.previousY[slot];
+    }
+
+    /**
+     * Put this entity back where a saved state had it, e.g. when restoring a snapshot of the game
+     *
+     * @param x The x location
+     * @param y The y location
+     * @param previousX The x location at the start of the tick
+     * @param previousY The y location at the start of the tick
+     */
+    public void restorePosition(double x, double y, double previousX, double previousY) {
+        store.setPosition(slot, x, y);
+        store.previousX[slot] = previousX;
+        store.previousY[slot] = previousY;
+    }
+
+    public Sprite getSprite() {
+        return sprite;
     }
 
     public double getsetHorizontalMovement() {
-        return dx;
+        return store.dx[slot];
     }
 
     public void setHorizontalMovement(double dx) {
-        this.dx = dx;
+        store.dx[slot] = dx;
     }
 
     public double getVerticalMovement() {
-        return dy;
+        return store.dy[slot];
     }
 
     public void setVerticalMovement(double dy) {
-        this.dy = dy;
+        store.dy[slot] = dy;
+    }
+
+    public int getWidth() {
+        return store.width[slot];
+    }
+
+    public int getHeight() {
+        return store.height[slot];
+    }
+
+    public int getCollisionLayer() {
+        return store.type[slot];
+    }
+
+    public int getCollisionMask() {
+        return store.mask[slot];
+    }
+
+    /**
+     * Set the collision layer this entity lives on and the layers it wants to be tested against
+     *
+     * @param layer The layer of this entity
+     * @param mask The layers this entity is interested in
+     */
+    protected void setCollisionLayer(int layer, int mask) {
+        collisionLayer = layer;
+        collisionMask = mask;
+        store.type[slot] = layer;
+        store.mask[slot] = mask;
+    }
+
+    /**
+     * Check if this entity and another are on layers that should ever be tested for collision
+     *
+     * @param other The other entity
+     * @return True if the pair should reach the narrowphase
+     */
+    public boolean canCollideWith(Entity other) {
+        return CollisionLayer.interacts(
+                store.type[slot],
+                store.mask[slot],
+                other.store.type[other.slot],
+                other.store.mask[other.slot]
+        );
     }
 
-    public void move(long delta) {
-        // update the location of the entity based on move speeds;
-        // The division by 1000 is to adjust for the fact that the movement value is specified in pixels
-        // per second, but the time is specified in milliseconds.
-        x += (delta * dx) / 1000;
-        y += (delta * dy) / 1000;
+    /**
+     * Give the slot of this entity back to its store, and the entity back to its pool if it has one.
+     * The entity must not be used afterwards, until respawned by its pool. Releasing it more than
+     * once does nothing.
+     */
+    public void release() {
+        if (slot != -1) {
+            store.release(slot);
+            slot = -1;
+
+            if (pool != null) {
+                pool.recycle(this);
+            }
+        }
+    }
+
+    void setPool(EntityPool<?> pool) {
+        this.pool = pool;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Get the number this entity was given when it last entered the simulation. No two entities added
+     * to the same simulation share one, so a pooled entity that's respawned can be told apart from
+     * the one it used to be, e.g. by the network snapshots
+     *
+     * @return The spawn id
+     */
+    public int getSpawnId() {
+        return spawnId;
+    }
+
+    public void setSpawnId(int spawnId) {
+        this.spawnId = spawnId;
+    }
+
+    /**
+     * Check whether this entity has been queued for removal this tick
+     *
+     * @return True if it's queued for removal
+     */
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    /**
+     * Flag this entity as queued for removal
+     *
+     * @return True if it wasn't already, false if it had been queued before
+     */
+    public boolean markRemoved() {
+        if (removed) {
+            return false;
+        }
+
+        removed = true;
+        return true;
+    }
+
+    /**
+     * Remember the current location as the one this entity had at the start of the tick, so the
+     * renderer can interpolate between the two
+     */
+    public void savePosition() {
+        store.savePosition(slot);
+    }
+
+    public void move(double delta) {
+        // update the location of the entity based on move speeds
+        store.move(slot, delta);
     }
 
     public void draw(Graphics g) {
-        sprite.draw(g, (int) x, (int) y);
+        sprite.draw(g, (int) store.x[slot], (int) store.y[slot]);
+    }
+
+    /**
+     * Draw this entity part way between where it was at the start of the tick and where it is now
+     *
+     * @param g The graphics context on which to draw
+     * @param alpha How far between the two locations to draw, 0 to 1
+     */
+    public void draw(Graphics g, double alpha) {
+        double previousX = store.previousX[slot];
+        double previousY = store.previousY[slot];
+
+        sprite.draw(
+                g,
+                (int) (previousX + (store.x[slot] - previousX) * alpha),
+                (int) (previousY + (store.y[slot] - previousY) * alpha)
+        );
+    }
+
+    /**
+     * Queue this entity to be drawn part way between where it was at the start of the tick and where it is now
+     *
+     * @param batch The batch to queue the sprite in
+     * @param alpha How far between the two locations to draw, 0 to 1
+     */
+    public void draw(SpriteBatch batch, double alpha) {
+        double previousX = store.previousX[slot];
+        double previousY = store.previousY[slot];
+
+        batch.add(
+                sprite,
+                (int) (previousX + (store.x[slot] - previousX) * alpha),
+                (int) (previousY + (store.y[slot] - previousY) * alpha)
+        );
     }
 
     public void doLogic() {
 
     }
 
-    // Check if this entity collided with another.
+    // Check if this entity collided with another, using the bounding boxes cached when the entities moved
     public boolean collidesWith(Entity other) {
-        me.setBounds(
-                (int) x,
-                (int) y,
-                sprite.getWidth(),
-                sprite.getHeight()
-        );
+        return EntityStore.overlaps(store, slot, other.store, other.slot);
+    }
 
-        him.setBounds(
-                (int) other.x,
-                (int) other.y,
-                other.sprite.getWidth(),
-                other.sprite.getHeight()
-        );
+    /**
+     * Check if the opaque pixels of this entity and another overlap. This is only meant to be called
+     * once {@link #collidesWith(Entity)} has found the bounding boxes to overlap. Entities whose sprite
+     * has no mask are treated as solid boxes.
+     *
+     * @param other The other entity
+     * @return True if any opaque pixel of the two entities overlap
+     */
+    public boolean pixelsCollideWith(Entity other) {
+        CollisionMask mine = sprite.getMask();
+        CollisionMask his = other.sprite.getMask();
+
+        if (mine == null || his == null) {
+            return true;
+        }
 
-        return me.intersects(him);
+        return CollisionMask.overlaps(
+                mine,
+                store.left[slot],
+                store.top[slot],
+                his,
+                other.store.left[other.slot],
+                other.store.top[other.slot]
+        );
     }
 
     public abstract void collidedWith(Entity other);
 
 }
-
@@ -0,0 +1,82 @@
+package sistema.entities;
+
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+/**
+ * A pool of entities of one type, so short lived entities like shots are respawned rather than
+ * created and left for the garbage collector every time. An entity acquired from a pool goes back
+ * to it by itself once {@link Entity#release()} is called.
+ *
+ * @param <T> The type of entity pooled
+ */
+public class EntityPool<T extends Entity> {
+
+    /** Creates a new entity when the pool is empty */
+    private final Supplier<T> factory;
+
+    /** The entities waiting to be reused */
+    private final ArrayList<T> free = new ArrayList<>();
+
+    /** The number of entities the pool ever had to create */
+    private int created = 0;
+
+    /**
+     * Create a new pool
+     *
+     * @param factory Creates a new entity when the pool is empty
+     */
+    public EntityPool(Supplier<T> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Get an entity from the pool, creating one if there are none free, and spawn it
+     *
+     * @param x The x location to spawn it at
+     * @param y The y location to spawn it at
+     * @return The entity
+     */
+    public T acquire(int x, int y) {
+        T entity;
+
+        if (free.isEmpty()) {
+            entity = factory.get();
+            entity.setPool(this);
+            created++;
+        } else {
+            entity = free.remove(free.size() - 1);
+        }
+
+        entity.spawn(x, y);
+        return entity;
+    }
+
+    /**
+     * Take a released entity back
+     *
+     * @param entity The entity, which must have been acquired from this pool
+     */
+    @SuppressWarnings("unchecked")
+    void recycle(Entity entity) {
+        free.add((T) entity);
+    }
+
+    /**
+     * Get the number of entities waiting to be reused
+     *
+     * @return The number of free entities
+     */
+    public int getFreeCount() {
+        return free.size();
+    }
+
+    /**
+     * Get the number of entities the pool ever had to create
+     *
+     * @return The number of entities created
+     */
+    public int getCreatedCount() {
+        return created;
+    }
+}
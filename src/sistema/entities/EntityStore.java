@@ -0,0 +1,238 @@
+package sistema.entities;
+
+import java.util.Arrays;
+
+/**
+ * A structure-of-arrays store for entity state. Rather than every entity keeping its position and
+ * velocity in fields on its own heap object, the store keeps them in parallel primitive columns
+ * indexed by slot, and an {@link Entity} is a lightweight handle onto one of those slots.
+ *
+ * Scanning a column (e.g. moving every entity, or building the collision grid) is then a linear walk
+ * through memory rather than chasing a pointer per entity. Released slots are kept on a free list
+ * and handed out again before the store grows.
+ */
+public class EntityStore {
+
+    /** The x location of each slot */
+    double[] x;
+    /** The y location of each slot */
+    double[] y;
+    /** The horizontal speed of each slot (pixels/sec) */
+    double[] dx;
+    /** The vertical speed of each slot (pixels/sec) */
+    double[] dy;
+    /** The x location of each slot at the start of the current tick */
+    double[] previousX;
+    /** The y location of each slot at the start of the current tick */
+    double[] previousY;
+    /** The left edge of the bounding box of each slot, kept in step with x */
+    int[] left;
+    /** The top edge of the bounding box of each slot, kept in step with y */
+    int[] top;
+    /** The width of the sprite of each slot */
+    int[] width;
+    /** The height of the sprite of each slot */
+    int[] height;
+    /** The type tag of each slot, its collision layer */
+    int[] type;
+    /** The collision mask of each slot */
+    int[] mask;
+    /** True if the slot is currently in use */
+    boolean[] alive;
+
+    /** The next free slot after each free slot, -1 at the end of the list */
+    private int[] nextFree;
+
+    /** The first free slot, -1 if the free list is empty */
+    private int freeHead = -1;
+
+    /** One past the highest slot ever handed out */
+    private int highWater;
+
+    /** The number of slots currently in use */
+    private int liveCount;
+
+    /**
+     * Create a new store
+     *
+     * @param capacity The number of slots to allocate up front, the store grows as needed
+     */
+    public EntityStore(int capacity) {
+        capacity = Math.max(1, capacity);
+
+        x = new double[capacity];
+        y = new double[capacity];
+        dx = new double[capacity];
+        dy = new double[capacity];
+        previousX = new double[capacity];
+        previousY = new double[capacity];
+        left = new int[capacity];
+        top = new int[capacity];
+        width = new int[capacity];
+        height = new int[capacity];
+        type = new int[capacity];
+        mask = new int[capacity];
+        alive = new boolean[capacity];
+        nextFree = new int[capacity];
+    }
+
+    /**
+     * Claim a slot, reusing a released one if there is any
+     *
+     * @return The index of the slot
+     */
+    public int allocate() {
+        int slot;
+
+        if (freeHead != -1) {
+            slot = freeHead;
+            freeHead = nextFree[slot];
+        } else {
+            if (highWater == x.length) {
+                grow(x.length * 2);
+            }
+            slot = highWater++;
+        }
+
+        x[slot] = 0;
+        y[slot] = 0;
+        dx[slot] = 0;
+        dy[slot] = 0;
+        previousX[slot] = 0;
+        previousY[slot] = 0;
+        left[slot] = 0;
+        top[slot] = 0;
+        width[slot] = 0;
+        height[slot] = 0;
+        type[slot] = 0;
+        mask[slot] = 0;
+        alive[slot] = true;
+        liveCount++;
+
+        return slot;
+    }
+
+    /**
+     * Give a slot back to the store. Releasing a slot that isn't in use does nothing.
+     *
+     * @param slot The index of the slot
+     */
+    public void release(int slot) {
+        if (!alive[slot]) {
+            return;
+        }
+
+        alive[slot] = false;
+        nextFree[slot] = freeHead;
+        freeHead = slot;
+        liveCount--;
+    }
+
+    /**
+     * Release every slot at once
+     */
+    public void clear() {
+        Arrays.fill(alive, 0, highWater, false);
+        freeHead = -1;
+        highWater = 0;
+        liveCount = 0;
+    }
+
+    /**
+     * Get the number of slots in use
+     *
+     * @return The number of live slots
+     */
+    public int size() {
+        return liveCount;
+    }
+
+    /**
+     * Place a slot at a location, updating its bounding box
+     *
+     * @param slot The index of the slot
+     * @param x The new x location
+     * @param y The new y location
+     */
+    public void setPosition(int slot, double x, double y) {
+        this.x[slot] = x;
+        this.y[slot] = y;
+        left[slot] = (int) x;
+        top[slot] = (int) y;
+    }
+
+    /**
+     * Remember the current location of a slot as the one it had at the start of the tick
+     *
+     * @param slot The index of the slot
+     */
+    public void savePosition(int slot) {
+        previousX[slot] = x[slot];
+        previousY[slot] = y[slot];
+    }
+
+    /**
+     * Move a single slot based on its speeds
+     *
+     * @param slot The index of the slot
+     * @param delta The time that has elapsed in milliseconds
+     */
+    public void move(int slot, double delta) {
+        // the division by 1000 is to adjust for the fact that the movement value is specified in pixels
+        // per second, but the time is specified in milliseconds.
+        x[slot] += (delta * dx[slot]) / 1000;
+        y[slot] += (delta * dy[slot]) / 1000;
+        left[slot] = (int) x[slot];
+        top[slot] = (int) y[slot];
+    }
+
+    /**
+     * Check if the cached bounding boxes of two slots, possibly in different stores, overlap
+     *
+     * @param a The store holding the first slot
+     * @param slotA The first slot
+     * @param b The store holding the second slot
+     * @param slotB The second slot
+     * @return True if the boxes overlap
+     */
+    static boolean overlaps(EntityStore a, int slotA, EntityStore b, int slotB) {
+        int ax = a.left[slotA];
+        int ay = a.top[slotA];
+        int bx = b.left[slotB];
+        int by = b.top[slotB];
+
+        return ax < bx + b.width[slotB]
+                && bx < ax + a.width[slotA]
+                && ay < by + b.height[slotB]
+                && by < ay + a.height[slotA];
+    }
+
+    /**
+     * Make room for a number of slots up front, e.g. before spawning a big wave, so the store grows
+     * once rather than doubling its way there
+     *
+     * @param capacity The number of slots to make room for
+     */
+    public void reserve(int capacity) {
+        if (capacity > x.length) {
+            grow(capacity);
+        }
+    }
+
+    private void grow(int capacity) {
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        dx = Arrays.copyOf(dx, capacity);
+        dy = Arrays.copyOf(dy, capacity);
+        previousX = Arrays.copyOf(previousX, capacity);
+        previousY = Arrays.copyOf(previousY, capacity);
+        left = Arrays.copyOf(left, capacity);
+        top = Arrays.copyOf(top, capacity);
+        width = Arrays.copyOf(width, capacity);
+        height = Arrays.copyOf(height, capacity);
+        type = Arrays.copyOf(type, capacity);
+        mask = Arrays.copyOf(mask, capacity);
+        alive = Arrays.copyOf(alive, capacity);
+        nextFree = Arrays.copyOf(nextFree, capacity);
+    }
+}
@@ -0,0 +1,210 @@
+package sistema.entities;
+
+import sistema.events.EventQueue;
+import sistema.events.GameEvent;
+
+import java.util.ArrayList;
+
+/**
+ * A block of aliens that moves as one. The formation owns the swarm's shared horizontal speed and
+ * its location, each alien only stores its offset within the formation. Reaching the edge of the
+ * screen is then a single test of the formation's bounding box rather than one per alien, and
+ * speeding the swarm up is a single multiply.
+ */
+public class Formation {
+
+    /** The distance the formation steps down each time it reaches the edge of the screen */
+    private static final int STEP_DOWN = 10;
+
+    /** The location of the formation, the aliens are offset from here */
+    private double x;
+    private double y;
+
+    /** The current speed of the formation horizontally (pixels/sec) */
+    private double dx;
+
+    /** The aliens in the formation */
+    private final ArrayList<AlienEntity> members = new ArrayList<>();
+
+    /** The extent of the members' offsets, only valid when {@link #boundsDirty} is false */
+    private double minOffsetX;
+    private double maxOffsetX;
+    private double maxOffsetY;
+
+    /** True if a member left and the bounds need working out again */
+    private boolean boundsDirty = false;
+
+    /** True if the formation reached the edge of the screen and needs to turn round */
+    private boolean turnRequested = false;
+
+    /**
+     * Create a new, empty formation
+     *
+     * @param x The x location of the formation
+     * @param y The y location of the formation
+     * @param dx The horizontal speed of the formation (pixels/sec)
+     */
+    public Formation(double x, double y, double dx) {
+        this.x = x;
+        this.y = y;
+        this.dx = dx;
+    }
+
+    /**
+     * Add an alien to the formation at its current location
+     *
+     * @param alien The alien joining
+     */
+    void join(AlienEntity alien) {
+        double offsetX = alien.getX() - x;
+        double offsetY = alien.getY() - y;
+
+        alien.setFormation(this, members.size(), offsetX, offsetY);
+        members.add(alien);
+
+        if (members.size() == 1) {
+            minOffsetX = offsetX;
+            maxOffsetX = offsetX;
+            maxOffsetY = offsetY;
+        } else {
+            minOffsetX = Math.min(minOffsetX, offsetX);
+            maxOffsetX = Math.max(maxOffsetX, offsetX);
+            maxOffsetY = Math.max(maxOffsetY, offsetY);
+        }
+    }
+
+    /**
+     * Take an alien out of the formation, e.g. because it was killed
+     *
+     * @param alien The alien leaving
+     */
+    void leave(AlienEntity alien) {
+        int index = alien.getFormationIndex();
+        AlienEntity last = members.remove(members.size() - 1);
+
+        if (last != alien) {
+            members.set(index, last);
+            last.setFormationIndex(index);
+        }
+
+        boundsDirty = true;
+    }
+
+    /**
+     * Move the formation, requesting a turn if it has reached the edge of the screen. The members
+     * pick up the new location when they move.
+     *
+     * @param delta The time that has elapsed in milliseconds
+     */
+    public void move(double delta) {
+        if (members.isEmpty()) {
+            return;
+        }
+
+        if (boundsDirty) {
+            computeBounds();
+        }
+
+        // if we have reached the left hand side of the screen and are moving left then request a turn,
+        // and vice versa, if we have reached the right hand side of the screen and are moving right
+        if ((dx < 0) && (x + minOffsetX < 10)) {
+            turnRequested = true;
+        }
+        if ((dx > 0) && (x + maxOffsetX > 750)) {
+            turnRequested = true;
+        }
+
+        x += (delta * dx) / 1000;
+    }
+
+    /**
+     * Apply a turn requested while moving: swap over horizontal movement and move down the screen a bit
+     *
+     * @param events The queue to publish the player's death to if the formation reached the bottom
+     */
+    public void doLogic(EventQueue events) {
+        if (!turnRequested) {
+            return;
+        }
+
+        dx = -dx;
+        y += STEP_DOWN;
+        turnRequested = false;
+
+        for (int i = 0; i < members.size(); i++) {
+            members.get(i).follow();
+        }
+
+        // if we've reached the bottom of the screen then the player dies
+        if (y + maxOffsetY > 570) {
+            events.publish(GameEvent.PLAYER_KILLED, (int) x, (int) (y + maxOffsetY), 0);
+        }
+    }
+
+    /**
+     * Speed the whole formation up
+     *
+     * @param factor The factor to multiply the speed by
+     */
+    public void speedUp(double factor) {
+        dx *= factor;
+    }
+
+    /**
+     * Put the formation back where a saved state had it, e.g. when restoring a snapshot of the game
+     *
+     * @param x The x location
+     * @param y The y location
+     * @param dx The horizontal speed (pixels/sec)
+     * @param turnRequested True if it was due to turn round
+     */
+    public void restore(double x, double y, double dx, boolean turnRequested) {
+        this.x = x;
+        this.y = y;
+        this.dx = dx;
+        this.turnRequested = turnRequested;
+    }
+
+    /**
+     * Work the bounds out again before the next move, e.g. because a member's offset changed
+     */
+    void invalidateBounds() {
+        boundsDirty = true;
+    }
+
+    public boolean isTurnRequested() {
+        return turnRequested;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getHorizontalMovement() {
+        return dx;
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    private void computeBounds() {
+        minOffsetX = Double.MAX_VALUE;
+        maxOffsetX = -Double.MAX_VALUE;
+        maxOffsetY = -Double.MAX_VALUE;
+
+        for (int i = 0; i < members.size(); i++) {
+            AlienEntity alien = members.get(i);
+
+            minOffsetX = Math.min(minOffsetX, alien.getOffsetX());
+            maxOffsetX = Math.max(maxOffsetX, alien.getOffsetX());
+            maxOffsetY = Math.max(maxOffsetY, alien.getOffsetY());
+        }
+
+        boundsDirty = false;
+    }
+}
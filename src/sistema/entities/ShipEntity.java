@@ -1,18 +1,32 @@
 package sistema.entities;
 
-import sistema.Game;
+import sistema.Simulation;
+import sistema.collision.CollisionLayer;
+import sistema.events.GameEvent;
 
 public class ShipEntity extends Entity {
 
-    private Game game;
+    private Simulation game;
 
-    public ShipEntity(Game game, String ref, int x, int y) {
-        super(ref, x, y);
+    /** The reference to the sprite of the ship */
+    private final String ref;
+
+    public ShipEntity(Simulation game, String ref, int x, int y) {
+        super(game.getEntityStore(), ref, x, y);
 
         this.game = game;
+        this.ref = ref;
+        setCollisionLayer(CollisionLayer.SHIP, CollisionLayer.ALIEN);
+    }
+
+    public String getSpriteRef() {
+        return ref;
     }
 
-    public void move(long delta) {
+    public void move(double delta) {
+        double dx = getsetHorizontalMovement();
+        double x = getX();
+
         // if we're moving left and have reached the left hand side of the screen, don't move
         if ((dx < 0) && (x < 10)) {
             return;
@@ -27,9 +41,9 @@ public class ShipEntity extends Entity {
     }
 
     public void collidedWith(Entity other) {
-        // if its an alien, notify the game that the player is dead
+        // if its an alien, let the game know the player is dead, it's dealt with at the end of the tick
         if (other instanceof AlienEntity) {
-            game.notifyDeath();
+            game.getEvents().publish(GameEvent.PLAYER_KILLED, (int) getX(), (int) getY(), 0);
         }
     }
 }
@@ -1,10 +1,12 @@
 package sistema.entities;
 
-import sistema.Game;
+import sistema.Simulation;
+import sistema.collision.CollisionLayer;
+import sistema.events.GameEvent;
 
 public class ShotEntity extends Entity {
 
-    private Game game;
+    private Simulation game;
 
     private double moveSpeed = -300;
 
@@ -13,34 +15,51 @@ public class ShotEntity extends Entity {
      */
     private boolean used = false;
 
-    public ShotEntity(Game game, String sprite, int x, int y) {
-        super(sprite, x, y);
+    public ShotEntity(Simulation game, String sprite, int x, int y) {
+        super(game.getEntityStore(), sprite, x, y);
 
         this.game = game;
+        setCollisionLayer(CollisionLayer.SHOT, CollisionLayer.ALIEN);
 
-        dy = moveSpeed;
+        setVerticalMovement(moveSpeed);
 
     }
 
-    public void move(long delta) {
+    @Override
+    public void spawn(int x, int y) {
+        super.spawn(x, y);
+
+        used = false;
+        setVerticalMovement(moveSpeed);
+    }
+
+    public void move(double delta) {
         // proceed with normal move
         super.move(delta);
 
         // if we shot off the screen, remove ourselves
-        if (y < -100) {
+        if (getY() < -100) {
             game.removeEntity(this);
         }
     }
 
     public void collidedWith(Entity other) {
+        // a shot is used up by the first alien it hits, and an alien can only be killed once, so two
+        // shots hitting one alien or one shot touching two aliens in the same tick count as one kill
+        if (used || other.isRemoved()) {
+            return;
+        }
+
         // if we've hit an alien, kill it!
         if (other instanceof AlienEntity) {
+            used = true;
+
             // remove the affected entities
             game.removeEntity(this);
             game.removeEntity(other);
 
-            // notify the game that the alien has been killed
-            game.notifyAlienKilled();
+            // let the game know the alien has been killed, it's dealt with at the end of the tick
+            game.getEvents().publish(GameEvent.ALIEN_KILLED, (int) other.getX(), (int) other.getY(), 0);
         }
     }
 }
\ No newline at end of file
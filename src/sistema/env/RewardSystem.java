@@ -0,0 +1,35 @@
+package sistema.env;
+
+import sistema.events.EventQueue;
+import sistema.events.EventSystem;
+import sistema.events.GameEvent;
+
+/**
+ * Counts the aliens killed and the deaths of the player in one environment since the last step, for
+ * {@link VectorEnv} to turn into rewards.
+ */
+class RewardSystem implements EventSystem {
+
+    /** The aliens killed since the last call to {@link #reset()} */
+    int kills = 0;
+
+    /** True if the player was killed since the last call to {@link #reset()} */
+    boolean died = false;
+
+    @Override
+    public void process(EventQueue events, int first, int end) {
+        for (int event = first; event != end; event++) {
+            int type = events.type(event);
+            if (type == GameEvent.ALIEN_KILLED) {
+                kills++;
+            } else if (type == GameEvent.PLAYER_KILLED) {
+                died = true;
+            }
+        }
+    }
+
+    void reset() {
+        kills = 0;
+        died = false;
+    }
+}
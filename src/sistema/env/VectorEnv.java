@@ -0,0 +1,382 @@
+package sistema.env;
+
+import sistema.RangeTask;
+import sistema.Simulation;
+import sistema.SpriteStore;
+import sistema.entities.AlienEntity;
+import sistema.entities.Entity;
+import sistema.entities.ShipEntity;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Steps a batch of games in lockstep for training agents, in the style of a vectorized gym
+ * environment. The caller writes one action per game into {@link #getActions()}, calls
+ * {@link #step()}, and reads the rewards, the episode ends and the observations back out of
+ * preallocated primitive arrays, so stepping allocates nothing.
+ *
+ * An action is the input state bits {@link Simulation#INPUT_LEFT}, {@link Simulation#INPUT_RIGHT}
+ * and {@link Simulation#INPUT_FIRE}, i.e. 0 to 7. The reward is {@link #KILL_REWARD} for every alien
+ * shot and {@link #DEATH_REWARD} when the player is killed. An episode ends when the player wins or
+ * dies, and its game is restarted straight away, so the observation after the last step of an
+ * episode is already the first one of the next.
+ *
+ * The observation of a game is a vector of {@link #getFeatureSize()} floats: the ship's x and the
+ * fraction of aliens left, then {@link #FEATURES_PER_ENTITY} floats per entity other than the ship,
+ * up to a maximum number of entities: its kind (1 for an alien, 2 for a shot, 0 for an empty slot)
+ * and its x and y scaled to 0..1. Optionally a downsampled frame is drawn as well, one byte per cell
+ * holding the kind of whatever covers it (3 for the ship).
+ */
+public class VectorEnv {
+
+    /** The reward for every alien shot */
+    public static final float KILL_REWARD = 1;
+
+    /** The reward when the player is killed */
+    public static final float DEATH_REWARD = -10;
+
+    /** The number of features before the per-entity ones */
+    public static final int HEADER_FEATURES = 2;
+
+    /** The number of features per entity */
+    public static final int FEATURES_PER_ENTITY = 3;
+
+    /** The kinds written to the observations */
+    public static final byte EMPTY = 0;
+    public static final byte ALIEN = 1;
+    public static final byte SHOT = 2;
+    public static final byte SHIP = 3;
+
+    /** The number of games one task steps when stepping on a pool */
+    private static final int CHUNK_SIZE = 8;
+
+    /** The games and their reward counters */
+    private final Simulation[] games;
+    private final RewardSystem[] counters;
+
+    /** The number of aliens each game's episode started with */
+    private final int[] startingAliens;
+
+    /** The action of each game, written by the caller */
+    private final int[] actions;
+
+    /** The reward of each game's last step */
+    private final float[] rewards;
+
+    /** 1 if the game's episode ended on the last step, else 0 */
+    private final byte[] dones;
+
+    /** The feature vectors of every game, one after the other */
+    private final float[] features;
+    private final int featureSize;
+    private final int maxEntities;
+
+    /** The downsampled frames of every game one after the other, null if frames aren't drawn */
+    private final byte[] frames;
+    private final int cellSize;
+    private final int frameWidth;
+    private final int frameHeight;
+
+    /** The number of ticks each step runs with the same action */
+    private final int frameSkip;
+
+    /** The length of a tick (ms) */
+    private final double delta;
+
+    /** The pool to step the games on, null to step them on the calling thread */
+    private ForkJoinPool pool;
+
+    /**
+     * Create a batch of games
+     *
+     * @param count The number of games
+     * @param seed The seed of the first game, the others get the following seeds
+     * @param maxEntities The number of entities, other than the ship, with room in the feature vector
+     * @param cellSize The size of a cell of the downsampled frame in pixels, 0 to not draw frames
+     * @param frameSkip The number of ticks each step runs with the same action
+     * @param tickRate The number of ticks per simulated second
+     */
+    public VectorEnv(int count, long seed, int maxEntities, int cellSize, int frameSkip, int tickRate) {
+        this.games = new Simulation[count];
+        this.counters = new RewardSystem[count];
+        this.startingAliens = new int[count];
+        this.actions = new int[count];
+        this.rewards = new float[count];
+        this.dones = new byte[count];
+
+        this.maxEntities = maxEntities;
+        this.featureSize = HEADER_FEATURES + maxEntities * FEATURES_PER_ENTITY;
+        this.features = new float[count * featureSize];
+
+        this.cellSize = cellSize;
+        this.frameWidth = cellSize > 0 ? (Simulation.WIDTH + cellSize - 1) / cellSize : 0;
+        this.frameHeight = cellSize > 0 ? (Simulation.HEIGHT + cellSize - 1) / cellSize : 0;
+        this.frames = cellSize > 0 ? new byte[count * frameWidth * frameHeight] : null;
+
+        this.frameSkip = Math.max(1, frameSkip);
+        this.delta = 1000.0 / tickRate;
+
+        for (int i = 0; i < count; i++) {
+            games[i] = new Simulation();
+            games[i].setSeed(seed + i);
+            counters[i] = new RewardSystem();
+            games[i].getEvents().addSystem(counters[i]);
+        }
+    }
+
+    /**
+     * Step the games on a pool rather than the calling thread
+     *
+     * @param pool The pool, null to step on the calling thread
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Start a new episode in every game and write the first observations
+     */
+    public void reset() {
+        for (int i = 0; i < games.length; i++) {
+            startEpisode(i);
+            rewards[i] = 0;
+            dones[i] = 0;
+            observe(i);
+        }
+    }
+
+    /**
+     * Apply every game's action for a step, then write the rewards, the episode ends and the new
+     * observations
+     */
+    public void step() {
+        if (pool != null && games.length > CHUNK_SIZE) {
+            RangeTask.run(pool, 0, games.length, CHUNK_SIZE, this::step);
+        } else {
+            step(0, games.length);
+        }
+    }
+
+    private void step(int start, int end) {
+        for (int i = start; i < end; i++) {
+            Simulation game = games[i];
+            RewardSystem counter = counters[i];
+            counter.reset();
+
+            game.applyInputState(actions[i] & (Simulation.INPUT_LEFT | Simulation.INPUT_RIGHT | Simulation.INPUT_FIRE));
+            for (int tick = 0; tick < frameSkip && !game.isWaitingForKeyPress(); tick++) {
+                game.tick(delta);
+            }
+
+            rewards[i] = counter.kills * KILL_REWARD + (counter.died ? DEATH_REWARD : 0);
+
+            if (game.isWaitingForKeyPress()) {
+                dones[i] = 1;
+                startEpisode(i);
+            } else {
+                dones[i] = 0;
+            }
+
+            observe(i);
+        }
+    }
+
+    private void startEpisode(int index) {
+        games[index].startGame();
+        startingAliens[index] = games[index].getAlienCount();
+    }
+
+    /**
+     * Write a game's observation into the feature and frame buffers
+     */
+    private void observe(int index) {
+        Simulation game = games[index];
+        ArrayList<Entity> entities = game.getEntities();
+
+        int base = index * featureSize;
+        int end = base + featureSize;
+        float[] out = features;
+
+        out[base + 1] = startingAliens[index] > 0 ? (float) game.getAlienCount() / startingAliens[index] : 0;
+
+        int slot = base + HEADER_FEATURES;
+        for (int i = 0; i < entities.size(); i++) {
+            Entity entity = entities.get(i);
+            byte kind = kind(entity);
+
+            if (kind == SHIP) {
+                out[base] = (float) (entity.getX() / Simulation.WIDTH);
+            } else if (slot < end) {
+                out[slot] = kind;
+                out[slot + 1] = (float) (entity.getX() / Simulation.WIDTH);
+                out[slot + 2] = (float) (entity.getY() / Simulation.HEIGHT);
+                slot += FEATURES_PER_ENTITY;
+            }
+        }
+
+        // the slots nobody is in
+        for (; slot < end; slot++) {
+            out[slot] = 0;
+        }
+
+        if (frames != null) {
+            drawFrame(index, entities);
+        }
+    }
+
+    /**
+     * Draw a game's downsampled frame, filling the cells each entity's bounding box covers
+     */
+    private void drawFrame(int index, ArrayList<Entity> entities) {
+        int size = frameWidth * frameHeight;
+        int base = index * size;
+        byte[] out = frames;
+
+        for (int i = base; i < base + size; i++) {
+            out[i] = EMPTY;
+        }
+
+        for (int i = 0; i < entities.size(); i++) {
+            Entity entity = entities.get(i);
+            int x = (int) entity.getX();
+            int y = (int) entity.getY();
+
+            int left = Math.max(0, x / cellSize);
+            int top = Math.max(0, y / cellSize);
+            int right = Math.min(frameWidth - 1, (x + entity.getWidth() - 1) / cellSize);
+            int bottom = Math.min(frameHeight - 1, (y + entity.getHeight() - 1) / cellSize);
+            byte kind = kind(entity);
+
+            for (int row = top; row <= bottom; row++) {
+                int offset = base + row * frameWidth;
+                for (int column = left; column <= right; column++) {
+                    out[offset + column] = kind;
+                }
+            }
+        }
+    }
+
+    private static byte kind(Entity entity) {
+        if (entity instanceof ShipEntity) {
+            return SHIP;
+        }
+        return entity instanceof AlienEntity ? ALIEN : SHOT;
+    }
+
+    public int size() {
+        return games.length;
+    }
+
+    /**
+     * Get the action buffer, one action per game, read by the next {@link #step()}
+     *
+     * @return The actions
+     */
+    public int[] getActions() {
+        return actions;
+    }
+
+    public float[] getRewards() {
+        return rewards;
+    }
+
+    public byte[] getDones() {
+        return dones;
+    }
+
+    /**
+     * Get the feature vectors, game i's starting at i * {@link #getFeatureSize()}
+     *
+     * @return The features
+     */
+    public float[] getFeatures() {
+        return features;
+    }
+
+    public int getFeatureSize() {
+        return featureSize;
+    }
+
+    public int getMaxEntities() {
+        return maxEntities;
+    }
+
+    /**
+     * Get the downsampled frames, game i's starting at i * width * height, in rows
+     *
+     * @return The frames, null if frames aren't drawn
+     */
+    public byte[] getFrames() {
+        return frames;
+    }
+
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+
+    /**
+     * Get one of the games, e.g. to look at it or draw it
+     *
+     * @param index The index of the game
+     * @return The game
+     */
+    public Simulation getGame(int index) {
+        return games[index];
+    }
+
+    /**
+     * Step a batch of games with random actions and report the steps per second. Configured with
+     * -Denv.count (default 256), -Denv.steps (default 2000), -Denv.entities (default 64),
+     * -Denv.cell (default 0, no frames), -Denv.frameskip (default 4) and -Denv.parallel=true to
+     * step on every core.
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        SpriteStore.get().preloadManifest("sprites/manifest.txt").join();
+
+        int count = Integer.getInteger("env.count", 256);
+        int steps = Integer.getInteger("env.steps", 2000);
+        int frameSkip = Integer.getInteger("env.frameskip", 4);
+
+        VectorEnv env = new VectorEnv(
+                count, 1,
+                Integer.getInteger("env.entities", 64),
+                Integer.getInteger("env.cell", 0),
+                frameSkip, 60
+        );
+        if (Boolean.getBoolean("env.parallel")) {
+            env.setPool(ForkJoinPool.commonPool());
+        }
+        env.reset();
+
+        Random random = new Random(1);
+        int[] actions = env.getActions();
+        double totalReward = 0;
+        long episodes = 0;
+
+        long start = System.nanoTime();
+        for (int step = 0; step < steps; step++) {
+            for (int i = 0; i < count; i++) {
+                actions[i] = random.nextInt(8);
+            }
+            env.step();
+
+            for (int i = 0; i < count; i++) {
+                totalReward += env.getRewards()[i];
+                episodes += env.getDones()[i];
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long total = (long) count * steps;
+        System.out.printf("%d envs x %d steps in %.1f ms: %.0f steps/s (%.0f ticks/s), %d episodes, mean reward %.2f per episode%n",
+                count, steps, elapsed / 1e6, total * 1e9 / elapsed, total * frameSkip * 1e9 / elapsed,
+                episodes, episodes > 0 ? totalReward / episodes : 0.0);
+    }
+}
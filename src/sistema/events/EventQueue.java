@@ -0,0 +1,166 @@
+package sistema.events;
+
+import java.util.ArrayList;
+
+/**
+ * A queue of game events, kept in a ring buffer of plain int columns so publishing an event never
+ * allocates. Entities publish events as things happen during a tick, then {@link #dispatch()} hands
+ * every event published since the last dispatch to each registered {@link EventSystem} in one batch.
+ * Ten hits in one tick are then handled in one pass rather than ten.
+ *
+ * Events published while a batch is being dispatched, e.g. by a system reacting to another event,
+ * stay in the queue for the next batch. If more events are published than the ring holds it doubles
+ * in size, so it settles at whatever the busiest tick needs.
+ *
+ * The queue isn't thread safe, events must be published and dispatched on the thread running the
+ * simulation.
+ */
+public class EventQueue {
+
+    /** The columns of the ring, one entry per event */
+    private int[] types;
+    private int[] xs;
+    private int[] ys;
+    private int[] values;
+
+    /** The ring's capacity minus one, the capacity is always a power of two */
+    private int mask;
+
+    /** The sequence number of the oldest event not yet dispatched */
+    private int head = 0;
+
+    /** The sequence number the next event published gets */
+    private int tail = 0;
+
+    /** The systems the events are dispatched to, in the order they were registered */
+    private final ArrayList<EventSystem> systems = new ArrayList<>();
+
+    /**
+     * Create a new queue
+     *
+     * @param capacity The number of events the ring holds before it has to grow, rounded up to a power of two
+     */
+    public EventQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+        types = new int[size];
+        xs = new int[size];
+        ys = new int[size];
+        values = new int[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Register a system to be handed every batch of events
+     *
+     * @param system The system
+     */
+    public void addSystem(EventSystem system) {
+        systems.add(system);
+    }
+
+    /**
+     * Publish an event, it's handled at the next dispatch
+     *
+     * @param type The type of the event, e.g. {@link GameEvent#ALIEN_KILLED}
+     * @param x The x position of the event
+     * @param y The y position of the event
+     * @param value A value whose meaning depends on the type
+     */
+    public void publish(int type, int x, int y, int value) {
+        if (tail - head == types.length) {
+            grow();
+        }
+
+        int index = tail & mask;
+        types[index] = type;
+        xs[index] = x;
+        ys[index] = y;
+        values[index] = value;
+        tail++;
+    }
+
+    /**
+     * Hand every event published since the last dispatch to each system, then drop them
+     */
+    public void dispatch() {
+        int first = head;
+        int end = tail;
+
+        if (first == end) {
+            return;
+        }
+
+        for (int i = 0; i < systems.size(); i++) {
+            systems.get(i).process(this, first, end);
+        }
+
+        head = end;
+    }
+
+    /**
+     * Drop every event not yet dispatched
+     */
+    public void clear() {
+        head = tail;
+    }
+
+    /**
+     * Get the number of events waiting to be dispatched
+     *
+     * @return The number of events
+     */
+    public int size() {
+        return tail - head;
+    }
+
+    /**
+     * Get the sequence number of the oldest event waiting to be dispatched, the waiting events run from
+     * here to here + {@link #size()}
+     *
+     * @return The sequence number
+     */
+    public int first() {
+        return head;
+    }
+
+    public int type(int event) {
+        return types[event & mask];
+    }
+
+    public int x(int event) {
+        return xs[event & mask];
+    }
+
+    public int y(int event) {
+        return ys[event & mask];
+    }
+
+    public int value(int event) {
+        return values[event & mask];
+    }
+
+    /**
+     * Double the size of the ring, keeping the events at the same sequence numbers
+     */
+    private void grow() {
+        int size = types.length * 2;
+        int[] newTypes = new int[size];
+        int[] newXs = new int[size];
+        int[] newYs = new int[size];
+        int[] newValues = new int[size];
+
+        for (int event = head; event != tail; event++) {
+            newTypes[event & (size - 1)] = types[event & mask];
+            newXs[event & (size - 1)] = xs[event & mask];
+            newYs[event & (size - 1)] = ys[event & mask];
+            newValues[event & (size - 1)] = values[event & mask];
+        }
+
+        types = newTypes;
+        xs = newXs;
+        ys = newYs;
+        values = newValues;
+        mask = size - 1;
+    }
+}
@@ -0,0 +1,22 @@
+package sistema.events;
+
+/**
+ * A system that reacts to game events, e.g. keeping score. Systems are registered with an
+ * {@link EventQueue} and handed every event published during a tick in one batch at its end.
+ */
+public interface EventSystem {
+
+    /**
+     * Handle a batch of events. The events are read through the queue by sequence number, e.g.
+     * <pre>
+     *     for (int event = first; event != end; event++) {
+     *         if (events.type(event) == GameEvent.ALIEN_KILLED) ...
+     *     }
+     * </pre>
+     *
+     * @param events The queue holding the events
+     * @param first The sequence number of the first event of the batch
+     * @param end The sequence number after the last event of the batch
+     */
+    void process(EventQueue events, int first, int end);
+}
@@ -0,0 +1,22 @@
+package sistema.events;
+
+/**
+ * The types of event published to the {@link EventQueue}. An event is a record of four ints: its
+ * type, a position and a value whose meaning depends on the type.
+ */
+public final class GameEvent {
+
+    /** A new game started, no position or value */
+    public static final int GAME_STARTED = 1;
+
+    /** The player fired a shot, at the position the shot was spawned */
+    public static final int SHOT_FIRED = 2;
+
+    /** An alien was shot, at the position of the alien */
+    public static final int ALIEN_KILLED = 3;
+
+    /** An alien got the player, at the position of the ship */
+    public static final int PLAYER_KILLED = 4;
+
+    private GameEvent() {}
+}
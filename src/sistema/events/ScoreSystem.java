@@ -0,0 +1,52 @@
+package sistema.events;
+
+/**
+ * Keeps the player's score: points for every alien shot, back to zero when a new game starts.
+ */
+public class ScoreSystem implements EventSystem {
+
+    /** The points an alien is worth */
+    private static final int ALIEN_POINTS = 10;
+
+    /** The score of the current game */
+    private int score = 0;
+
+    /** The best score of any game so far */
+    private int highScore = 0;
+
+    @Override
+    public void process(EventQueue events, int first, int end) {
+        for (int event = first; event != end; event++) {
+            switch (events.type(event)) {
+                case GameEvent.GAME_STARTED:
+                    score = 0;
+                    break;
+                case GameEvent.ALIEN_KILLED:
+                    score += ALIEN_POINTS;
+                    highScore = Math.max(highScore, score);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Set the scores, e.g. when restoring a snapshot of the game
+     *
+     * @param score The score of the current game
+     * @param highScore The best score of any game
+     */
+    public void restore(int score, int highScore) {
+        this.score = score;
+        this.highScore = highScore;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getHighScore() {
+        return highScore;
+    }
+}
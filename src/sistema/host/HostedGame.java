@@ -0,0 +1,83 @@
+package sistema.host;
+
+import sistema.Simulation;
+
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+/**
+ * One match run by a {@link SessionHost}: a headless {@link Simulation} and the policy choosing its
+ * input every tick. Whenever the game ends a new one is started straight away. A game is only ever
+ * ticked by one thread at a time, though not always the same one.
+ */
+public class HostedGame {
+
+    /** The game */
+    private final Simulation simulation = new Simulation();
+
+    /** Picks the input for each tick */
+    private ToIntFunction<Simulation> policy;
+
+    /** The number of ticks run and games started */
+    private long ticks = 0;
+    private int games = 0;
+
+    /**
+     * Create a new match playing with a simple bot: it sweeps left and right at random and fires
+     * whenever it can
+     *
+     * @param seed The seed for the game and the bot
+     */
+    public HostedGame(long seed) {
+        simulation.setSeed(seed);
+
+        Random random = new Random(seed ^ 0x5DEECE66DL);
+        int[] direction = {Simulation.INPUT_LEFT};
+        policy = sim -> {
+            if (random.nextInt(60) == 0) {
+                direction[0] = direction[0] == Simulation.INPUT_LEFT ? Simulation.INPUT_RIGHT : Simulation.INPUT_LEFT;
+            }
+            return direction[0] | Simulation.INPUT_FIRE;
+        };
+    }
+
+    /**
+     * Set the policy choosing the input for each tick
+     *
+     * @param policy Given the game, returns the input state bits for the next tick
+     */
+    public void setPolicy(ToIntFunction<Simulation> policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Run a number of ticks
+     *
+     * @param count The number of ticks
+     * @param delta The length of each tick in milliseconds
+     */
+    void run(int count, double delta) {
+        for (int i = 0; i < count; i++) {
+            if (simulation.isWaitingForKeyPress()) {
+                simulation.startGame();
+                games++;
+            }
+
+            simulation.applyInputState(policy.applyAsInt(simulation));
+            simulation.tick(delta);
+        }
+        ticks += count;
+    }
+
+    public Simulation getSimulation() {
+        return simulation;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public int getGames() {
+        return games;
+    }
+}
@@ -0,0 +1,177 @@
+package sistema.host;
+
+import sistema.RangeTask;
+import sistema.SpriteStore;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Hosts many independent matches in one JVM, e.g. for a kiosk backend or for training agents. Every
+ * match is a {@link HostedGame} with its own headless {@link sistema.Simulation}, sharing nothing
+ * with the others but the sprites, which the {@link SpriteStore} loads once and never changes.
+ *
+ * The matches are run on a work-stealing pool: each run is split into chunks of matches, and each
+ * chunk runs its matches one after the other for a slice of ticks, so a match stays in one core's
+ * cache for a while and idle workers steal the chunks of busy ones. The matches don't interact, so
+ * they don't need to run in lockstep within a slice.
+ *
+ * Note -Dmetrics=true is meant for one game per JVM, its histograms would be shared by every match.
+ */
+public class SessionHost {
+
+    /** The number of matches run by one task, enough to make a task worth stealing */
+    private static final int CHUNK_SIZE = 16;
+
+    /** The pool the matches are run on */
+    private final ForkJoinPool pool;
+
+    /** The matches hosted */
+    private final ArrayList<HostedGame> games = new ArrayList<>();
+
+    /**
+     * Create a new host
+     *
+     * @param pool The pool to run the matches on
+     */
+    public SessionHost(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Start hosting a new match
+     *
+     * @param seed The seed for the match
+     * @return The match
+     */
+    public HostedGame addGame(long seed) {
+        HostedGame game = new HostedGame(seed);
+        games.add(game);
+        return game;
+    }
+
+    /**
+     * Stop hosting a match
+     *
+     * @param game The match to drop
+     */
+    public void removeGame(HostedGame game) {
+        games.remove(game);
+    }
+
+    public int size() {
+        return games.size();
+    }
+
+    public HostedGame getGame(int index) {
+        return games.get(index);
+    }
+
+    /**
+     * Run every match for a number of ticks, returning once they all have
+     *
+     * @param ticks The number of ticks to run each match for
+     * @param delta The length of each tick in milliseconds
+     */
+    public void run(int ticks, double delta) {
+        if (!games.isEmpty()) {
+            RangeTask.run(pool, 0, games.size(), CHUNK_SIZE, (start, end) -> {
+                for (int i = start; i < end; i++) {
+                    games.get(i).run(ticks, delta);
+                }
+            });
+        }
+    }
+
+    /**
+     * Get the number of ticks run across every match so far
+     *
+     * @return The total number of ticks
+     */
+    public long getTotalTicks() {
+        long total = 0;
+        for (HostedGame game : games) {
+            total += game.getTicks();
+        }
+        return total;
+    }
+
+    /**
+     * Get the number of games started across every match so far
+     *
+     * @return The total number of games
+     */
+    public long getTotalGames() {
+        long total = 0;
+        for (HostedGame game : games) {
+            total += game.getGames();
+        }
+        return total;
+    }
+
+    /**
+     * Measure the heap used per match, by creating a batch of matches and comparing the heap used before
+     * and after. The figure is only as good as System.gc(), so treat it as an estimate.
+     *
+     * @param count The number of matches to create
+     * @param ticks The number of ticks to run them for first, so their state has settled
+     * @param delta The length of each tick in milliseconds
+     * @return The estimated bytes per match
+     */
+    public static long measureBytesPerGame(int count, int ticks, double delta) {
+        Runtime runtime = Runtime.getRuntime();
+        long before = usedHeap(runtime);
+
+        SessionHost host = new SessionHost(ForkJoinPool.commonPool());
+        for (int i = 0; i < count; i++) {
+            host.addGame(i);
+        }
+        host.run(ticks, delta);
+
+        long after = usedHeap(runtime);
+
+        // keep the host reachable until after the measurement
+        return host.size() > 0 ? (after - before) / host.size() : 0;
+    }
+
+    private static long usedHeap(Runtime runtime) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Host a number of matches and report the simulated ticks per second. Configured with
+     * -Dhost.sessions (default 1000), -Dhost.ticks (default 1000 per match), -Dhost.slice (default 100
+     * ticks per task) and -Dhost.tickrate (default 60).
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        SpriteStore.get().preloadManifest("sprites/manifest.txt").join();
+
+        int sessions = Integer.getInteger("host.sessions", 1000);
+        int ticks = Integer.getInteger("host.ticks", 1000);
+        int slice = Integer.getInteger("host.slice", 100);
+        double delta = 1000.0 / Integer.getInteger("host.tickrate", 60);
+
+        System.out.printf("%d bytes per match (estimated over %d matches)%n",
+                measureBytesPerGame(Math.min(sessions, 1000), slice, delta), Math.min(sessions, 1000));
+
+        SessionHost host = new SessionHost(ForkJoinPool.commonPool());
+        for (int i = 0; i < sessions; i++) {
+            host.addGame(i);
+        }
+
+        long start = System.nanoTime();
+        for (int done = 0; done < ticks; done += slice) {
+            host.run(Math.min(slice, ticks - done), delta);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long total = host.getTotalTicks();
+        System.out.printf("%d matches x %d ticks on %d threads in %.1f ms: %.0f ticks/s, %d games played%n",
+                sessions, ticks, ForkJoinPool.commonPool().getParallelism(), elapsed / 1e6,
+                total * 1e9 / elapsed, host.getTotalGames());
+    }
+}
@@ -0,0 +1,69 @@
+package sistema.hud;
+
+/**
+ * One labelled number on the HUD, e.g. "SCORE 000120". The text and its width are only worked out
+ * again when the number changes, and the text is built in place so a change doesn't allocate.
+ */
+class Counter {
+
+    /** The label drawn in front of the number */
+    private final String label;
+
+    /** The number of digits the number is padded to with zeros */
+    private final int digits;
+
+    /** The text drawn for the current number */
+    private final StringBuilder text = new StringBuilder(24);
+
+    /** The number shown, and the width of its text in pixels */
+    private int value = Integer.MIN_VALUE;
+    private int width;
+
+    /**
+     * Create a new counter
+     *
+     * @param label The label drawn in front of the number, with any space after it
+     * @param digits The number of digits to pad the number to, 0 or 1 for no padding
+     */
+    Counter(String label, int digits) {
+        this.label = label;
+        this.digits = digits;
+    }
+
+    /**
+     * Show a number
+     *
+     * @param value The number to show
+     * @param atlas The atlas the text is measured with
+     * @return True if the number changed, so the text has to be drawn again
+     */
+    boolean set(int value, GlyphAtlas atlas) {
+        if (value == this.value) {
+            return false;
+        }
+        this.value = value;
+
+        text.setLength(0);
+        text.append(label);
+
+        int length = 1;
+        for (int rest = Math.abs(value / 10); rest > 0; rest /= 10) {
+            length++;
+        }
+        for (int i = length; i < digits; i++) {
+            text.append('0');
+        }
+        text.append(value);
+
+        width = atlas.stringWidth(text);
+        return true;
+    }
+
+    CharSequence getText() {
+        return text;
+    }
+
+    int getWidth() {
+        return width;
+    }
+}
@@ -0,0 +1,179 @@
+package sistema.hud;
+
+import sistema.RasterSprite;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * The printable ASCII characters of a font rasterized once into a single image, so text can be drawn
+ * by copying glyphs instead of going through the font pipeline every frame. The glyphs are drawn
+ * without anti-aliasing, the same as the default drawString, so they have hard edges and can be
+ * blitted by the {@link sistema.SoftwareRenderer} as well as drawn with Java2D.
+ *
+ * Glyphs are laid out at their whole-pixel advances, which is also where drawString puts them with
+ * the default rendering hints. The atlas is drawn in the one colour it was built with.
+ */
+public class GlyphAtlas {
+
+    /** The first and last characters in the atlas, anything else is drawn as a question mark */
+    private static final char FIRST = ' ';
+    private static final char LAST = '~';
+
+    /** The room left either side of each glyph for the bits that hang over its advance, e.g. the tail of a j */
+    private static final int PAD = 4;
+
+    /** The atlas of the default font in white, built the first time it's asked for */
+    private static GlyphAtlas defaultAtlas;
+
+    /** The image holding every glyph side by side */
+    private final BufferedImage image;
+
+    /** The left edge of each glyph's cell in the image, and its advance */
+    private final int[] cellX = new int[LAST - FIRST + 1];
+    private final int[] advance = new int[LAST - FIRST + 1];
+
+    /** Each glyph's cell decoded for the software renderer */
+    private final RasterSprite[] rasters = new RasterSprite[LAST - FIRST + 1];
+
+    /** The distance from the top of a cell to the baseline, and the height of a cell */
+    private final int ascent;
+    private final int height;
+
+    /**
+     * Rasterize a font
+     *
+     * @param font The font to rasterize
+     * @param color The colour to draw the glyphs in
+     */
+    public GlyphAtlas(Font font, Color color) {
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D measure = scratch.createGraphics();
+        FontMetrics metrics = measure.getFontMetrics(font);
+        measure.dispose();
+
+        ascent = metrics.getAscent();
+        height = metrics.getAscent() + metrics.getDescent();
+
+        int width = 0;
+        for (char c = FIRST; c <= LAST; c++) {
+            cellX[c - FIRST] = width;
+            advance[c - FIRST] = metrics.charWidth(c);
+            width += advance[c - FIRST] + PAD * 2;
+        }
+
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+        g.setFont(font);
+        g.setColor(color);
+
+        for (char c = FIRST; c <= LAST; c++) {
+            g.drawString(String.valueOf(c), cellX[c - FIRST] + PAD, ascent);
+        }
+        g.dispose();
+
+        for (int i = 0; i < rasters.length; i++) {
+            rasters[i] = new RasterSprite(image.getSubimage(cellX[i], 0, advance[i] + PAD * 2, height));
+        }
+    }
+
+    /**
+     * Get the atlas of the font Java2D draws with by default, in white
+     *
+     * @return The default atlas
+     */
+    public static synchronized GlyphAtlas getDefault() {
+        if (defaultAtlas == null) {
+            defaultAtlas = new GlyphAtlas(new Font(Font.DIALOG, Font.PLAIN, 12), Color.white);
+        }
+        return defaultAtlas;
+    }
+
+    /**
+     * Get the index of a character's glyph
+     *
+     * @param c The character
+     * @return The index of its glyph, the question mark's if it isn't in the atlas
+     */
+    private static int glyph(char c) {
+        return c >= FIRST && c <= LAST ? c - FIRST : '?' - FIRST;
+    }
+
+    /**
+     * Get how far past the ends of a piece of text its glyphs may be drawn
+     *
+     * @return The overhang in pixels
+     */
+    public int getOverhang() {
+        return PAD;
+    }
+
+    public int getAscent() {
+        return ascent;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get the width of a piece of text
+     *
+     * @param text The text to measure
+     * @return The width in pixels
+     */
+    public int stringWidth(CharSequence text) {
+        int width = 0;
+        for (int i = 0; i < text.length(); i++) {
+            width += advance[glyph(text.charAt(i))];
+        }
+        return width;
+    }
+
+    /**
+     * Draw a piece of text with Java2D
+     *
+     * @param g The graphics context on which to draw
+     * @param text The text to draw
+     * @param x The x location of the start of the text
+     * @param baseline The y location of the baseline, as for drawString
+     */
+    public void draw(Graphics g, CharSequence text, int x, int baseline) {
+        int top = baseline - ascent;
+
+        for (int i = 0; i < text.length(); i++) {
+            int glyph = glyph(text.charAt(i));
+            int width = advance[glyph] + PAD * 2;
+
+            g.drawImage(
+                    image,
+                    x - PAD, top, x - PAD + width, top + height,
+                    cellX[glyph], 0, cellX[glyph] + width, height,
+                    null
+            );
+            x += advance[glyph];
+        }
+    }
+
+    /**
+     * Copy a piece of text into a frame of pixels
+     *
+     * @param frame The frame's pixels, row by row
+     * @param frameWidth The width of the frame
+     * @param frameHeight The height of the frame
+     * @param text The text to draw
+     * @param x The x location of the start of the text
+     * @param baseline The y location of the baseline, as for drawString
+     */
+    public void draw(int[] frame, int frameWidth, int frameHeight, CharSequence text, int x, int baseline) {
+        int top = baseline - ascent;
+
+        for (int i = 0; i < text.length(); i++) {
+            int glyph = glyph(text.charAt(i));
+
+            rasters[glyph].blit(frame, frameWidth, x - PAD, top, 0, frameHeight);
+            x += advance[glyph];
+        }
+    }
+}
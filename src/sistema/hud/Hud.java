@@ -0,0 +1,197 @@
+package sistema.hud;
+
+import sistema.RasterSprite;
+import sistema.Simulation;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * The heads-up display along the top of the screen: the score, the high score, the wave, the lives
+ * left and the frame rate. The bar is drawn from a {@link GlyphAtlas} into an image of its own, and
+ * that image is only drawn again when one of the numbers changes. Every other frame the HUD costs
+ * one copy of the part of the image under each counter, most of the bar is see-through and blending
+ * it would cost more than the text, or one blit with the {@link sistema.SoftwareRenderer}.
+ *
+ * Call {@link #update(Simulation)} once a frame before drawing. It also counts the frames, so the
+ * frame rate shown is the rate the HUD is drawn at.
+ */
+public class Hud {
+
+    /** The height of the bar */
+    public static final int HEIGHT = 20;
+
+    /** The baseline of the text in the bar */
+    private static final int BASELINE = 15;
+
+    /** The left edge of the counters laid out from the left, and the margin on the right */
+    private static final int MARGIN = 10;
+    private static final int WAVE_X = 520;
+    private static final int LIVES_X = 610;
+
+    /** The atlas the text is drawn with */
+    private final GlyphAtlas atlas;
+
+    /** The counters */
+    private final Counter score = new Counter("SCORE ", 6);
+    private final Counter highScore = new Counter("HI ", 6);
+    private final Counter wave = new Counter("WAVE ", 2);
+    private final Counter lives = new Counter("LIVES ", 1);
+    private final Counter framesPerSecond = new Counter("FPS ", 0);
+
+    /** The left and right edge of each counter's text the last time the bar was drawn, overhang included */
+    private final int[] spans = new int[10];
+
+    /** The bar, drawn again when a counter changes */
+    private final BufferedImage layer = createLayer();
+
+    /** The bar decoded for the software renderer, null until it's next asked for */
+    private RasterSprite raster;
+
+    /** True if a counter changed since the bar was last drawn */
+    private boolean dirty = true;
+
+    /** The frames counted since the frame rate was last worked out, and when that was (ns) */
+    private int frames = 0;
+    private long second = System.nanoTime();
+    private int rate = 0;
+
+    /**
+     * Create a HUD drawn with the default atlas
+     */
+    public Hud() {
+        this(GlyphAtlas.getDefault());
+    }
+
+    /**
+     * Create a HUD drawn with an atlas of its own
+     *
+     * @param atlas The atlas to draw the text with
+     */
+    public Hud(GlyphAtlas atlas) {
+        this.atlas = atlas;
+    }
+
+    /**
+     * Count a frame and take the numbers to show from the game
+     *
+     * @param simulation The game to show the counters of
+     * @return True if a number changed, so the bar will look different
+     */
+    public boolean update(Simulation simulation) {
+        return update(simulation.getScore(), simulation.getHighScore(), simulation.getWaveNumber(), simulation.getLives());
+    }
+
+    /**
+     * Count a frame and set the numbers to show
+     *
+     * @param score The score of the current game
+     * @param highScore The best score so far
+     * @param wave The wave being played
+     * @param lives The lives left
+     * @return True if a number changed, so the bar will look different
+     */
+    public boolean update(int score, int highScore, int wave, int lives) {
+        frames++;
+        long now = System.nanoTime();
+        if (now - second >= 1000000000L) {
+            rate = (int) Math.round(frames * 1e9 / (now - second));
+            frames = 0;
+            second = now;
+        }
+
+        // every counter has to be set, so no short circuiting
+        boolean changed = this.score.set(score, atlas);
+        changed |= this.highScore.set(highScore, atlas);
+        changed |= this.wave.set(wave, atlas);
+        changed |= this.lives.set(lives, atlas);
+        changed |= framesPerSecond.set(rate, atlas);
+
+        dirty |= changed;
+        return changed;
+    }
+
+    /**
+     * Draw the HUD with Java2D
+     *
+     * @param g The graphics context on which to draw
+     */
+    public void draw(Graphics g) {
+        redraw();
+
+        for (int i = 0; i < spans.length; i += 2) {
+            g.drawImage(layer, spans[i], 0, spans[i + 1], HEIGHT, spans[i], 0, spans[i + 1], HEIGHT, null);
+        }
+    }
+
+    /**
+     * Draw the HUD into a frame of pixels
+     *
+     * @param frame The frame's pixels, row by row
+     * @param frameWidth The width of the frame
+     * @param frameHeight The height of the frame
+     */
+    public void draw(int[] frame, int frameWidth, int frameHeight) {
+        redraw();
+        if (raster == null) {
+            raster = new RasterSprite(layer);
+        }
+        raster.blit(frame, frameWidth, 0, 0, 0, frameHeight);
+    }
+
+    /**
+     * Create the image the bar is drawn into, one that can be kept in video memory between changes
+     * when there's a display
+     *
+     * @return The image
+     */
+    private static BufferedImage createLayer() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(Simulation.WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                                                .getDefaultScreenDevice()
+                                                .getDefaultConfiguration();
+
+        return gc.createCompatibleImage(Simulation.WIDTH, HEIGHT, Transparency.BITMASK);
+    }
+
+    /**
+     * Draw the bar again if a counter changed since it was last drawn
+     */
+    private void redraw() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        raster = null;
+
+        Graphics2D g = layer.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, layer.getWidth(), layer.getHeight());
+        g.setComposite(AlphaComposite.SrcOver);
+
+        draw(g, 0, score, MARGIN);
+        draw(g, 1, highScore, (Simulation.WIDTH - highScore.getWidth()) / 2);
+        draw(g, 2, wave, WAVE_X);
+        draw(g, 3, lives, LIVES_X);
+        draw(g, 4, framesPerSecond, Simulation.WIDTH - MARGIN - framesPerSecond.getWidth());
+        g.dispose();
+    }
+
+    /**
+     * Draw a counter into the bar and remember the span it covers
+     *
+     * @param g The graphics context of the bar
+     * @param index The index of the counter
+     * @param counter The counter to draw
+     * @param x The x location of the start of its text
+     */
+    private void draw(Graphics2D g, int index, Counter counter, int x) {
+        atlas.draw(g, counter.getText(), x, BASELINE);
+
+        spans[index * 2] = Math.max(0, x - atlas.getOverhang());
+        spans[index * 2 + 1] = Math.min(Simulation.WIDTH, x + counter.getWidth() + atlas.getOverhang());
+    }
+}
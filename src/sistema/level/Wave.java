@@ -0,0 +1,223 @@
+package sistema.level;
+
+import sistema.AssetLoadException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A wave of aliens in its compiled binary form, as written by {@link WaveCompiler}. The wave is read
+ * straight out of its buffer, usually a memory-mapped file, so loading even a huge wave is only
+ * mapping the file and reading the sprite table. The formations are fixed size records the game
+ * spawns its aliens from directly, see {@link sistema.Simulation#setWave(Wave)}.
+ *
+ * The compiled form is
+ * <pre>
+ *     int     magic number, "WAVE"
+ *     int     format version
+ *     int     the number of sprite references, each a short length and UTF-8 bytes
+ *     int     the ship's sprite, x and y
+ *     int     the number of formations, each a {@link #FORMATION_SIZE} byte record of
+ *             int x, int y, double speed, int rows, int columns, int spacing x, int spacing y, int sprite
+ * </pre>
+ * Sprites are indices into the sprite table.
+ */
+public class Wave {
+
+    /** The magic number a compiled wave starts with, "WAVE" */
+    public static final int MAGIC = 0x57415645;
+
+    /** The version of the compiled format, bumped whenever it changes */
+    public static final int VERSION = 1;
+
+    /** The size of a formation record */
+    static final int FORMATION_SIZE = 36;
+
+    /** The wave the game has always started with: 5 rows of 12 aliens moving left */
+    public static final String CLASSIC =
+            "ship sprite=sprites/ship.gif x=370 y=550\n"
+            + "formation x=100 y=50 speed=-75 rows=5 columns=12 spacingx=50 spacingy=30 sprite=sprites/alien.gif\n";
+
+    /** The compiled wave */
+    private final ByteBuffer data;
+
+    /** The sprite references */
+    private final String[] sprites;
+
+    /** The ship */
+    private final int shipSprite;
+    private final int shipX;
+    private final int shipY;
+
+    /** The number of formations and the position of the first record */
+    private final int formationCount;
+    private final int formations;
+
+    /** The total number of aliens */
+    private final int alienCount;
+
+    /**
+     * Read a compiled wave
+     *
+     * @param data The compiled wave, from its position on
+     * @throws AssetLoadException Indicates the buffer doesn't hold a compiled wave of this version
+     */
+    public Wave(ByteBuffer data) {
+        this.data = data.slice();
+
+        if (this.data.remaining() < 8 || this.data.getInt() != MAGIC) {
+            throw new AssetLoadException("Not a compiled wave");
+        }
+        int version = this.data.getInt();
+        if (version != VERSION) {
+            throw new AssetLoadException("Unsupported wave version " + version);
+        }
+
+        sprites = new String[this.data.getInt()];
+        for (int i = 0; i < sprites.length; i++) {
+            byte[] bytes = new byte[this.data.getShort()];
+            this.data.get(bytes);
+            sprites[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        shipSprite = checkSprite(this.data.getInt());
+        shipX = this.data.getInt();
+        shipY = this.data.getInt();
+
+        formationCount = this.data.getInt();
+        formations = this.data.position();
+        if (this.data.remaining() < (long) formationCount * FORMATION_SIZE) {
+            throw new AssetLoadException("Compiled wave is truncated");
+        }
+
+        long aliens = 0;
+        for (int i = 0; i < formationCount; i++) {
+            checkSprite(getFormationSprite(i));
+            aliens += (long) getRows(i) * getColumns(i);
+        }
+        if (aliens > Integer.MAX_VALUE) {
+            throw new AssetLoadException("Too many aliens in the wave");
+        }
+        alienCount = (int) aliens;
+    }
+
+    /**
+     * Load a wave from a file. A file ending in .txt is compiled from the text format on the fly,
+     * anything else is mapped as a compiled wave.
+     *
+     * @param path The file
+     * @return The wave
+     * @throws AssetLoadException Indicates the file couldn't be read or isn't a valid wave
+     */
+    public static Wave load(Path path) {
+        try {
+            if (path.toString().endsWith(".txt")) {
+                return new Wave(WaveCompiler.compile(Files.readString(path, StandardCharsets.UTF_8)));
+            }
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return new Wave(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        } catch (IOException e) {
+            throw new AssetLoadException("Failed to load wave: " + path, e);
+        }
+    }
+
+    /**
+     * Get the classic wave, compiled once
+     *
+     * @return The classic wave
+     */
+    public static Wave classic() {
+        return Classic.WAVE;
+    }
+
+    /** Holds the classic wave, so it's only compiled the first time it's asked for */
+    private static class Classic {
+        static final Wave WAVE = new Wave(WaveCompiler.compile(CLASSIC));
+    }
+
+    public int getAlienCount() {
+        return alienCount;
+    }
+
+    public String getShipSprite() {
+        return sprites[shipSprite];
+    }
+
+    public int getShipX() {
+        return shipX;
+    }
+
+    public int getShipY() {
+        return shipY;
+    }
+
+    public int getFormationCount() {
+        return formationCount;
+    }
+
+    public int getFormationX(int formation) {
+        return data.getInt(record(formation));
+    }
+
+    public int getFormationY(int formation) {
+        return data.getInt(record(formation) + 4);
+    }
+
+    /**
+     * Get the speed a formation starts moving at
+     *
+     * @param formation The index of the formation
+     * @return The horizontal speed (pixels/sec), negative to start moving left
+     */
+    public double getSpeed(int formation) {
+        return data.getDouble(record(formation) + 8);
+    }
+
+    public int getRows(int formation) {
+        return data.getInt(record(formation) + 16);
+    }
+
+    public int getColumns(int formation) {
+        return data.getInt(record(formation) + 20);
+    }
+
+    public int getSpacingX(int formation) {
+        return data.getInt(record(formation) + 24);
+    }
+
+    public int getSpacingY(int formation) {
+        return data.getInt(record(formation) + 28);
+    }
+
+    /**
+     * Get the sprite the aliens of a formation are drawn with
+     *
+     * @param formation The index of the formation
+     * @return The sprite reference
+     */
+    public String getSprite(int formation) {
+        return sprites[getFormationSprite(formation)];
+    }
+
+    private int getFormationSprite(int formation) {
+        return data.getInt(record(formation) + 32);
+    }
+
+    private int record(int formation) {
+        return formations + formation * FORMATION_SIZE;
+    }
+
+    private int checkSprite(int sprite) {
+        if (sprite < 0 || sprite >= sprites.length) {
+            throw new AssetLoadException("Bad sprite index in wave: " + sprite);
+        }
+        return sprite;
+    }
+}
@@ -0,0 +1,185 @@
+package sistema.level;
+
+import sistema.AssetLoadException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Compiles waves from their text form into the binary form read by {@link Wave}. The text form has
+ * one entry per line, blank lines and lines starting with # are skipped:
+ * <pre>
+ *     # the player's ship, exactly one
+ *     ship sprite=sprites/ship.gif x=370 y=550
+ *     # a block of aliens moving as one, as many as you like
+ *     formation x=100 y=50 speed=-75 rows=5 columns=12 spacingx=50 spacingy=30 sprite=sprites/alien.gif
+ * </pre>
+ * The aliens of a formation are laid out row by row from its top left corner. Every key of an entry
+ * must be given.
+ *
+ * Run it as {@code java sistema.level.WaveCompiler <wave.txt> <wave.bin>}.
+ */
+public class WaveCompiler {
+
+    private WaveCompiler() {}
+
+    /**
+     * Compile a wave
+     *
+     * @param text The wave in its text form
+     * @return The compiled wave, flipped ready to read
+     * @throws AssetLoadException Indicates the text isn't a valid wave, the message says which line
+     */
+    public static ByteBuffer compile(String text) {
+        ArrayList<String> sprites = new ArrayList<>();
+        HashMap<String, Integer> spriteIndices = new HashMap<>();
+        ArrayList<int[]> formations = new ArrayList<>();
+        ArrayList<Double> speeds = new ArrayList<>();
+        int[] ship = null;
+
+        String[] lines = text.split("\r?\n");
+        for (int number = 1; number <= lines.length; number++) {
+            String line = lines[number - 1].trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] tokens = line.split("\\s+");
+            HashMap<String, String> values = new HashMap<>();
+            for (int i = 1; i < tokens.length; i++) {
+                int equals = tokens[i].indexOf('=');
+                if (equals <= 0) {
+                    throw error(number, "expected key=value, got " + tokens[i]);
+                }
+                values.put(tokens[i].substring(0, equals).toLowerCase(), tokens[i].substring(equals + 1));
+            }
+
+            String sprite = require(values, "sprite", number);
+            int spriteIndex = spriteIndices.computeIfAbsent(sprite, ref -> {
+                sprites.add(ref);
+                return sprites.size() - 1;
+            });
+
+            switch (tokens[0]) {
+                case "ship":
+                    if (ship != null) {
+                        throw error(number, "more than one ship");
+                    }
+                    ship = new int[] {spriteIndex, integer(values, "x", number), integer(values, "y", number)};
+                    break;
+                case "formation":
+                    int rows = integer(values, "rows", number);
+                    int columns = integer(values, "columns", number);
+                    if (rows < 0 || columns < 0) {
+                        throw error(number, "rows and columns can't be negative");
+                    }
+
+                    formations.add(new int[] {
+                            integer(values, "x", number), integer(values, "y", number), rows, columns,
+                            integer(values, "spacingx", number), integer(values, "spacingy", number), spriteIndex
+                    });
+                    try {
+                        speeds.add(Double.parseDouble(require(values, "speed", number)));
+                    } catch (NumberFormatException e) {
+                        throw error(number, "speed isn't a number");
+                    }
+                    break;
+                default:
+                    throw error(number, "unknown entry " + tokens[0]);
+            }
+        }
+
+        if (ship == null) {
+            throw new AssetLoadException("Wave has no ship");
+        }
+
+        int size = 28 + formations.size() * Wave.FORMATION_SIZE;
+        for (String sprite : sprites) {
+            size += 2 + sprite.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(Wave.MAGIC);
+        out.putInt(Wave.VERSION);
+
+        out.putInt(sprites.size());
+        for (String sprite : sprites) {
+            byte[] bytes = sprite.getBytes(StandardCharsets.UTF_8);
+            out.putShort((short) bytes.length);
+            out.put(bytes);
+        }
+
+        out.putInt(ship[0]);
+        out.putInt(ship[1]);
+        out.putInt(ship[2]);
+
+        out.putInt(formations.size());
+        for (int i = 0; i < formations.size(); i++) {
+            int[] formation = formations.get(i);
+            out.putInt(formation[0]);
+            out.putInt(formation[1]);
+            out.putDouble(speeds.get(i));
+            out.putInt(formation[2]);
+            out.putInt(formation[3]);
+            out.putInt(formation[4]);
+            out.putInt(formation[5]);
+            out.putInt(formation[6]);
+        }
+
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Compile a wave file into a compiled wave file
+     *
+     * @param in The wave in its text form
+     * @param out The file to write the compiled wave to
+     */
+    public static void compile(Path in, Path out) throws IOException {
+        ByteBuffer compiled = compile(Files.readString(in, StandardCharsets.UTF_8));
+        byte[] bytes = new byte[compiled.remaining()];
+        compiled.get(bytes);
+        Files.write(out, bytes);
+    }
+
+    private static String require(HashMap<String, String> values, String key, int line) {
+        String value = values.get(key);
+        if (value == null) {
+            throw error(line, "missing " + key);
+        }
+        return value;
+    }
+
+    private static int integer(HashMap<String, String> values, String key, int line) {
+        try {
+            return Integer.parseInt(require(values, key, line));
+        } catch (NumberFormatException e) {
+            throw error(line, key + " isn't a whole number");
+        }
+    }
+
+    private static AssetLoadException error(int line, String message) {
+        return new AssetLoadException("Wave line " + line + ": " + message);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java sistema.level.WaveCompiler <wave.txt> <wave.bin>");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        compile(Paths.get(args[0]), Paths.get(args[1]));
+        Wave wave = Wave.load(Paths.get(args[1]));
+
+        System.out.printf("%d formations, %d aliens, compiled in %.1f ms%n",
+                wave.getFormationCount(), wave.getAlienCount(), (System.nanoTime() - start) / 1e6);
+    }
+}
@@ -0,0 +1,159 @@
+package sistema.metrics;
+
+/**
+ * A histogram of durations in nanoseconds, laid out like an HDR histogram: values are bucketed by
+ * their highest set bit and then split linearly into 16 sub-buckets, so every value is kept to within
+ * about 6% whatever its size, in a fixed 5KB of counts.
+ *
+ * Recording is a couple of shifts and an increment with no allocation or locking. A histogram is only
+ * ever recorded into from one thread, other threads take a {@link #snapshot()} to read it, which may
+ * miss the odd value being recorded at that moment but never blocks the game loop.
+ */
+public class Histogram {
+
+    /** The number of bits of each value kept exactly */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /** Half the number of sub-buckets, the ones below it are only used by the smallest values */
+    private static final int SUB_BUCKET_HALF = 1 << (SUB_BUCKET_BITS - 1);
+
+    /** The largest value the histogram can tell apart, about 18 minutes. Larger values are clamped to it */
+    private static final long MAX_VALUE = (1L << 40) - 1;
+
+    /** The number of values in each bucket */
+    private final long[] counts = new long[bucket(MAX_VALUE) + 1];
+
+    /**
+     * Record a value
+     *
+     * @param value The value in nanoseconds, negative values count as 0
+     */
+    public void record(long value) {
+        counts[bucket(Math.max(0, Math.min(MAX_VALUE, value)))]++;
+    }
+
+    /**
+     * Take a copy of the histogram as it is now
+     *
+     * @return The copy
+     */
+    public Histogram snapshot() {
+        Histogram copy = new Histogram();
+        System.arraycopy(counts, 0, copy.counts, 0, counts.length);
+        return copy;
+    }
+
+    /**
+     * Get the values recorded since an earlier snapshot of this histogram
+     *
+     * @param earlier The earlier snapshot
+     * @return A new histogram of the values recorded since
+     */
+    public Histogram since(Histogram earlier) {
+        Histogram difference = new Histogram();
+        for (int i = 0; i < counts.length; i++) {
+            difference.counts[i] = counts[i] - earlier.counts[i];
+        }
+        return difference;
+    }
+
+    /**
+     * Add the values recorded in another histogram to this one, e.g. to combine several threads' worth
+     *
+     * @param other The histogram to add
+     */
+    public void add(Histogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (long c : counts) {
+            count += c;
+        }
+        return count;
+    }
+
+    /**
+     * Get the mean of the recorded values, taking each value as the middle of its bucket
+     *
+     * @return The mean in nanoseconds, 0 if nothing was recorded
+     */
+    public double getMean() {
+        long count = 0;
+        double total = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                count += counts[i];
+                total += counts[i] * (lowestValue(i) + highestValue(i)) / 2.0;
+            }
+        }
+
+        return count == 0 ? 0 : total / count;
+    }
+
+    /**
+     * Get the value a given share of the recorded values are at or below
+     *
+     * @param percentile The percentile, e.g. 99.0
+     * @return The highest value of the bucket the percentile falls in, in nanoseconds, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return highestValue(i);
+            }
+        }
+
+        return MAX_VALUE;
+    }
+
+    public long getMax() {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] != 0) {
+                return highestValue(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Work out the bucket of a value. Values below {@code 2 * SUB_BUCKET_HALF} get a bucket each, above
+     * that each power of two is split into {@code SUB_BUCKET_HALF} buckets.
+     */
+    private static int bucket(long value) {
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        if (shift <= 0) {
+            return (int) value;
+        }
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    private static long lowestValue(int bucket) {
+        int shift = bucket / SUB_BUCKET_HALF - 1;
+        if (shift <= 0) {
+            return bucket;
+        }
+        return (long) (bucket - shift * SUB_BUCKET_HALF) << shift;
+    }
+
+    private static long highestValue(int bucket) {
+        int shift = bucket / SUB_BUCKET_HALF - 1;
+        if (shift <= 0) {
+            return bucket;
+        }
+        return lowestValue(bucket) + (1L << shift) - 1;
+    }
+}
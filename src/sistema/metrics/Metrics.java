@@ -0,0 +1,149 @@
+package sistema.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Frame time instrumentation: a histogram of how long each phase of the game loop takes, and counters
+ * of what the simulation did. Enabled with -Dmetrics=true.
+ *
+ * Timing a phase looks like
+ * <pre>
+ *     long start = Metrics.start();
+ *     ...
+ *     Metrics.stop(Metrics.MOVE, start);
+ * </pre>
+ * The switch is a static final, so when metrics are disabled the JIT folds every call away and the
+ * instrumentation costs nothing but the odd local variable.
+ *
+ * Each phase must only ever be timed from one thread. The histograms and counters only ever grow,
+ * {@link MetricsReporter} rolls them over into the per-interval figures it writes out and the
+ * overlay shows.
+ */
+public final class Metrics {
+
+    /** True if metrics are being collected */
+    public static final boolean ENABLED = Boolean.getBoolean("metrics");
+
+    /** Applying the player's input */
+    public static final int INPUT = 0;
+
+    /** Moving the entities and formations */
+    public static final int MOVE = 1;
+
+    /** Finding and resolving collisions */
+    public static final int COLLISION = 2;
+
+    /** Removing dead entities */
+    public static final int REMOVE = 3;
+
+    /** Running the formation and entity logic */
+    public static final int LOGIC = 4;
+
+    /** A whole simulation tick, including the above */
+    public static final int TICK = 5;
+
+    /** Drawing the frame into the back buffer */
+    public static final int DRAW = 6;
+
+    /** Showing the back buffer, i.e. strategy.show() */
+    public static final int SHOW = 7;
+
+    /** Sleeping or waiting for the next frame */
+    public static final int SLEEP = 8;
+
+    /** A whole pass of the render loop */
+    public static final int FRAME = 9;
+
+    /** The names of the phases, by phase */
+    static final String[] PHASES = {
+            "input", "move", "collision", "remove", "logic", "tick", "draw", "show", "sleep", "frame"
+    };
+
+    /** The number of entities at the end of the last tick, a gauge rather than a running count */
+    public static final int ENTITIES = 0;
+
+    /** The pairs of entities the broadphase tested for overlap */
+    public static final int PAIRS_TESTED = 1;
+
+    /** The pairs that did collide */
+    public static final int HITS = 2;
+
+    /** The shots fired */
+    public static final int SHOTS_SPAWNED = 3;
+
+    /** The shots taken out of the game */
+    public static final int SHOTS_REMOVED = 4;
+
+    /** The names of the counters, by counter */
+    static final String[] COUNTERS = {
+            "entities", "pairs_tested", "hits", "shots_spawned", "shots_removed"
+    };
+
+    /** The time spent in each phase */
+    private static final Histogram[] histograms = new Histogram[PHASES.length];
+
+    /** The counters */
+    private static final AtomicLongArray counters = new AtomicLongArray(COUNTERS.length);
+
+    static {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Start timing a phase
+     *
+     * @return The start time to hand to {@link #stop(int, long)}
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Finish timing a phase
+     *
+     * @param phase The phase, e.g. {@link #MOVE}
+     * @param start The time returned by {@link #start()}
+     */
+    public static void stop(int phase, long start) {
+        if (ENABLED) {
+            histograms[phase].record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Add to a counter
+     *
+     * @param counter The counter, e.g. {@link #HITS}
+     * @param amount The amount to add
+     */
+    public static void count(int counter, long amount) {
+        if (ENABLED) {
+            counters.addAndGet(counter, amount);
+        }
+    }
+
+    /**
+     * Set a gauge, e.g. {@link #ENTITIES}
+     *
+     * @param counter The gauge
+     * @param value Its value now
+     */
+    public static void set(int counter, long value) {
+        if (ENABLED) {
+            counters.lazySet(counter, value);
+        }
+    }
+
+    static Histogram snapshot(int phase) {
+        return histograms[phase].snapshot();
+    }
+
+    static long counter(int counter) {
+        return counters.get(counter);
+    }
+}
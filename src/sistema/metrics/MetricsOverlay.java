@@ -0,0 +1,54 @@
+package sistema.metrics;
+
+import java.awt.*;
+
+/**
+ * Draws the last interval of metrics over the top left of the game: the p50, p99 and max of every
+ * phase in milliseconds along with the share of the frame budget its p99 takes up, and the counters.
+ */
+public class MetricsOverlay {
+
+    /** The see-through background behind the text, and the font the text is drawn in */
+    private static final Color BACKGROUND = new Color(0, 0, 0, 160);
+    private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+
+    /** The reporter the intervals come from */
+    private final MetricsReporter reporter;
+
+    /** The time a frame may take, in nanoseconds */
+    private final long frameBudget;
+
+    /** The interval the lines were last laid out for, and the lines */
+    private MetricsReporter.Interval shown;
+    private String[] lines = new String[0];
+
+    /**
+     * Create a new overlay
+     *
+     * @param reporter The reporter the intervals come from
+     * @param framesPerSecond The target frame rate the phases are budgeted against, 0 for 60
+     */
+    public MetricsOverlay(MetricsReporter reporter, int framesPerSecond) {
+        this.reporter = reporter;
+        this.frameBudget = 1000000000L / (framesPerSecond > 0 ? framesPerSecond : 60);
+    }
+
+    public void draw(Graphics2D g) {
+        MetricsReporter.Interval interval = reporter.getLast();
+
+        // the text only changes once an interval, so only format it then
+        if (interval != shown) {
+            shown = interval;
+            lines = interval.describe(frameBudget);
+        }
+
+        g.setColor(BACKGROUND);
+        g.fillRect(4, 4, 320, lines.length * 14 + 8);
+        g.setColor(Color.green);
+        g.setFont(FONT);
+
+        for (int i = 0; i < lines.length; i++) {
+            g.drawString(lines[i], 10, 18 + i * 14);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package sistema.metrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Rolls the {@link Metrics} over into intervals on a thread of its own, e.g. once a second, and
+ * optionally appends every interval to a CSV file: one row per interval with the count, mean, p50,
+ * p99 and max of every phase in microseconds, followed by the counters for the interval.
+ */
+public class MetricsReporter {
+
+    /** The metrics of one interval */
+    public static class Interval {
+
+        /** The time the interval ended, in milliseconds since the reporter started */
+        private final long time;
+
+        /** The time spent in each phase during the interval */
+        private final Histogram[] phases;
+
+        /** How much each counter went up during the interval, or the value of a gauge at its end */
+        private final long[] counters;
+
+        Interval(long time, Histogram[] phases, long[] counters) {
+            this.time = time;
+            this.phases = phases;
+            this.counters = counters;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * @param phase The phase, e.g. {@link Metrics#DRAW}
+         * @return The time spent in the phase during the interval
+         */
+        public Histogram getPhase(int phase) {
+            return phases[phase];
+        }
+
+        /**
+         * @param counter The counter, e.g. {@link Metrics#HITS}
+         * @return How much the counter went up during the interval
+         */
+        public long getCounter(int counter) {
+            return counters[counter];
+        }
+
+        /**
+         * Lay the interval out as a table, one line per phase with its p50, p99 and max in milliseconds
+         * and the share of the frame budget its p99 takes up, then one line per counter
+         *
+         * @param frameBudget The time a frame may take, in nanoseconds
+         * @return The lines of the table
+         */
+        public String[] describe(long frameBudget) {
+            String[] text = new String[Metrics.PHASES.length + Metrics.COUNTERS.length + 1];
+
+            text[0] = String.format(Locale.ROOT, "%-10s %7s %7s %7s %5s", "phase", "p50", "p99", "max", "bdgt");
+            for (int i = 0; i < Metrics.PHASES.length; i++) {
+                Histogram phase = phases[i];
+                text[i + 1] = String.format(Locale.ROOT, "%-10s %7.3f %7.3f %7.3f %4d%%",
+                        Metrics.PHASES[i],
+                        phase.getPercentile(50) / 1000000.0,
+                        phase.getPercentile(99) / 1000000.0,
+                        phase.getMax() / 1000000.0,
+                        phase.getPercentile(99) * 100 / frameBudget);
+            }
+
+            for (int i = 0; i < Metrics.COUNTERS.length; i++) {
+                text[Metrics.PHASES.length + 1 + i] = String.format(Locale.ROOT, "%-13s %d",
+                        Metrics.COUNTERS[i],
+                        counters[i]);
+            }
+
+            return text;
+        }
+    }
+
+    /** The length of an interval in milliseconds */
+    private final long intervalMillis;
+
+    /** The file the intervals are written to, null to keep them in memory only */
+    private final BufferedWriter csv;
+
+    /** The histograms and counters at the end of the last interval */
+    private Histogram[] lastPhases = new Histogram[Metrics.PHASES.length];
+    private long[] lastCounters = new long[Metrics.COUNTERS.length];
+
+    /** The last complete interval */
+    private volatile Interval last;
+
+    private final long started = System.nanoTime();
+
+    /**
+     * Create a new reporter, call {@link #start()} to set it going
+     *
+     * @param intervalMillis The length of an interval in milliseconds
+     * @param csvPath The file to write the intervals to, null to not write them out
+     * @throws IOException Indicates the file couldn't be created
+     */
+    public MetricsReporter(long intervalMillis, Path csvPath) throws IOException {
+        this.intervalMillis = intervalMillis;
+
+        for (int i = 0; i < lastPhases.length; i++) {
+            lastPhases[i] = new Histogram();
+        }
+        last = new Interval(0, lastPhases, lastCounters);
+
+        if (csvPath != null) {
+            csv = Files.newBufferedWriter(csvPath, StandardCharsets.UTF_8);
+            csv.write(header());
+            csv.newLine();
+            csv.flush();
+        } else {
+            csv = null;
+        }
+    }
+
+    /**
+     * Start rolling the intervals over on a daemon thread
+     */
+    public void start() {
+        Thread thread = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(intervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                roll();
+            }
+        }, "metrics");
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Get the last complete interval
+     *
+     * @return The interval, all zeroes before the first one completes
+     */
+    public Interval getLast() {
+        return last;
+    }
+
+    /**
+     * End the current interval and start the next
+     */
+    public synchronized void roll() {
+        Histogram[] phases = new Histogram[lastPhases.length];
+        Histogram[] totals = new Histogram[lastPhases.length];
+        long[] counters = new long[lastCounters.length];
+        long[] counterTotals = new long[lastCounters.length];
+
+        for (int i = 0; i < phases.length; i++) {
+            totals[i] = Metrics.snapshot(i);
+            phases[i] = totals[i].since(lastPhases[i]);
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counterTotals[i] = Metrics.counter(i);
+            counters[i] = i == Metrics.ENTITIES ? counterTotals[i] : counterTotals[i] - lastCounters[i];
+        }
+
+        lastPhases = totals;
+        lastCounters = counterTotals;
+        last = new Interval((System.nanoTime() - started) / 1000000, phases, counters);
+
+        if (csv != null) {
+            try {
+                csv.write(row(last));
+                csv.newLine();
+                csv.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static String header() {
+        StringBuilder header = new StringBuilder("time_ms");
+
+        for (String phase : Metrics.PHASES) {
+            for (String column : new String[] {"count", "mean_us", "p50_us", "p99_us", "max_us"}) {
+                header.append(',').append(phase).append('_').append(column);
+            }
+        }
+        for (String counter : Metrics.COUNTERS) {
+            header.append(',').append(counter);
+        }
+
+        return header.toString();
+    }
+
+    private static String row(Interval interval) {
+        StringBuilder row = new StringBuilder().append(interval.getTime());
+
+        for (int i = 0; i < Metrics.PHASES.length; i++) {
+            Histogram phase = interval.getPhase(i);
+            row.append(',').append(phase.getCount())
+               .append(',').append(String.format(Locale.ROOT, "%.1f", phase.getMean() / 1000.0))
+               .append(',').append(String.format(Locale.ROOT, "%.1f", phase.getPercentile(50) / 1000.0))
+               .append(',').append(String.format(Locale.ROOT, "%.1f", phase.getPercentile(99) / 1000.0))
+               .append(',').append(String.format(Locale.ROOT, "%.1f", phase.getMax() / 1000.0));
+        }
+        for (int i = 0; i < Metrics.COUNTERS.length; i++) {
+            row.append(',').append(interval.getCounter(i));
+        }
+
+        return row.toString();
+    }
+}
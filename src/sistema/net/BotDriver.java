@@ -0,0 +1,160 @@
+package sistema.net;
+
+import sistema.Simulation;
+import sistema.SpriteStore;
+import sistema.metrics.Histogram;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Load tests a {@link Server} with bots. Each bot is a {@link Client} that starts a game whenever
+ * it's waiting, then fires constantly while sweeping left and right. They all run on one thread
+ * around a selector and send their input at the server's tick rate. Once a second the snapshots
+ * received, the bandwidth per bot and the round trip times are printed.
+ *
+ * Configured with -Dnet.bots (default 100), -Dnet.seconds (default 10), -Dnet.host and -Dnet.port
+ * for the server to connect to, and -Dnet.tickrate for the input rate (default 60). With
+ * -Dnet.loopback=true (the default) a server is started in this process on a free port and the
+ * bots connect to it over loopback.
+ */
+public class BotDriver {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+
+        int bots = Integer.getInteger("net.bots", 100);
+        int seconds = Integer.getInteger("net.seconds", 10);
+        int tickRate = Integer.getInteger("net.tickrate", 60);
+        String host = System.getProperty("net.host", "localhost");
+        int port = Integer.getInteger("net.port", 7777);
+
+        Server server = null;
+        Thread serverThread = null;
+        if (!"false".equals(System.getProperty("net.loopback"))) {
+            SpriteStore.get().preloadManifest("sprites/manifest.txt").join();
+
+            server = new Server(0, tickRate, Integer.getInteger("net.snapshotrate", 20));
+            port = server.getPort();
+            serverThread = new Thread(server, "server");
+            serverThread.start();
+        }
+
+        Selector selector = Selector.open();
+        ArrayList<Client> clients = new ArrayList<>();
+        for (int i = 0; i < bots; i++) {
+            Client client = new Client(host, port);
+            client.getChannel().register(selector, SelectionKey.OP_READ, client);
+            clients.add(client);
+        }
+        System.out.println(bots + " bots connected to " + host + ":" + port);
+
+        long tickLength = 1000000000L / tickRate;
+        long start = System.nanoTime();
+        long end = start + seconds * 1000000000L;
+        long nextTick = start;
+        long nextReport = start + 1000000000L;
+        long lastSnapshots = 0;
+        long lastBytes = 0;
+        Histogram lastRoundTrips = new Histogram();
+        int tick = 0;
+
+        while (System.nanoTime() < end && !clients.isEmpty()) {
+            long wait = nextTick - System.nanoTime();
+            if (wait > 1000000) {
+                selector.select(wait / 1000000);
+            } else {
+                selector.selectNow();
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+
+                Client client = (Client) key.attachment();
+                if (client.receive() < 0) {
+                    key.cancel();
+                    clients.remove(client);
+                }
+            }
+
+            long now = System.nanoTime();
+            if (now >= nextTick) {
+                nextTick += tickLength;
+                tick++;
+
+                for (int i = 0; i < clients.size(); i++) {
+                    Client client = clients.get(i);
+                    client.sendInput(input(client, tick + i * 7));
+                }
+            }
+
+            if (now >= nextReport) {
+                nextReport += 1000000000L;
+
+                long snapshots = 0;
+                long bytes = 0;
+                Histogram roundTrips = new Histogram();
+                for (Client client : clients) {
+                    snapshots += client.getFullSnapshots() + client.getDeltaSnapshots();
+                    bytes += client.getBytesIn();
+                    roundTrips.add(client.getRoundTrips());
+                }
+
+                Histogram interval = roundTrips.since(lastRoundTrips);
+                System.out.printf(
+                        "bots %d | %d snapshots/s | %.0f B/s per bot | rtt p50 %.1f ms p99 %.1f ms%n",
+                        clients.size(), snapshots - lastSnapshots,
+                        clients.isEmpty() ? 0.0 : (double) (bytes - lastBytes) / clients.size(),
+                        interval.getPercentile(50) / 1e6, interval.getPercentile(99) / 1e6
+                );
+
+                lastSnapshots = snapshots;
+                lastBytes = bytes;
+                lastRoundTrips = roundTrips;
+            }
+        }
+
+        long full = 0;
+        long delta = 0;
+        long bytes = 0;
+        for (Client client : clients) {
+            full += client.getFullSnapshots();
+            delta += client.getDeltaSnapshots();
+            bytes += client.getBytesIn();
+            client.close();
+        }
+        System.out.printf("%d full and %d delta snapshots, %.1f bytes per snapshot on average%n",
+                full, delta, (double) bytes / Math.max(1, full + delta));
+
+        if (server != null) {
+            server.stop();
+            serverThread.join();
+        }
+    }
+
+    /**
+     * Work out a bot's input for a tick
+     *
+     * @param client The bot
+     * @param time The tick, offset per bot so they don't all move in step
+     * @return The input state bits
+     */
+    private static int input(Client client, int time) {
+        NetSnapshot snapshot = client.getLatest();
+        if (snapshot == null) {
+            return 0;
+        }
+        if (snapshot.isWaitingForKeyPress()) {
+            return Simulation.INPUT_START;
+        }
+
+        // sweep across the screen and back about every two seconds
+        int direction = (time / 60) % 2 == 0 ? Simulation.INPUT_LEFT : Simulation.INPUT_RIGHT;
+        return direction | Simulation.INPUT_FIRE;
+    }
+}
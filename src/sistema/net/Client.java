@@ -0,0 +1,195 @@
+package sistema.net;
+
+import sistema.metrics.Histogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The client end of a connection to a {@link Server}. It sends the player's input and decodes the
+ * snapshots that come back, keeping the recent ones around as baselines for the ones that follow.
+ * The round trip time is measured from the client clock the server echoes back in each snapshot.
+ *
+ * The socket is non-blocking, so one thread can drive many clients, see {@link BotDriver}.
+ */
+public class Client {
+
+    /** The number of snapshots kept to decode against, the same as the server keeps */
+    private static final int HISTORY = 32;
+
+    /** The connection to the server */
+    private final SocketChannel channel;
+
+    /** Bytes read but not yet decoded, and bytes waiting to be written */
+    private final ByteBuffer in = ByteBuffer.allocate(Protocol.MAX_FRAME * 2);
+    private final ByteBuffer out = ByteBuffer.allocate(4096);
+
+    /** The snapshots received recently, by tick modulo {@link #HISTORY} */
+    private final NetSnapshot[] received = new NetSnapshot[HISTORY];
+
+    /** The latest snapshot, null until the first one arrives */
+    private NetSnapshot latest;
+
+    /** The codec snapshots are decoded with */
+    private final SnapshotCodec codec = new SnapshotCodec();
+
+    /** The round trip times measured (ns) */
+    private final Histogram roundTrips = new Histogram();
+
+    /** Traffic counters */
+    private long bytesIn = 0;
+    private long bytesOut = 0;
+    private long fullSnapshots = 0;
+    private long deltaSnapshots = 0;
+
+    /**
+     * Connect to a server, blocking until connected
+     *
+     * @param host The server's host
+     * @param port The server's port
+     */
+    public Client(String host, int port) throws IOException {
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.configureBlocking(false);
+
+        for (int i = 0; i < HISTORY; i++) {
+            received[i] = new NetSnapshot();
+        }
+    }
+
+    /**
+     * Get the connection, e.g. to register it with a selector
+     *
+     * @return The socket channel
+     */
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Send the player's input, acknowledging the latest snapshot
+     *
+     * @param state The input state bits, as in {@link sistema.Simulation#getInputState()}
+     */
+    public void sendInput(int state) throws IOException {
+        Protocol.writeInput(out, latest != null ? latest.tick : 0, System.nanoTime(), state);
+        flush();
+    }
+
+    /**
+     * Write whatever output is still waiting
+     *
+     * @return True if everything was written
+     */
+    public boolean flush() throws IOException {
+        out.flip();
+        bytesOut += channel.write(out);
+        out.compact();
+        return out.position() == 0;
+    }
+
+    /**
+     * Read whatever has arrived and decode any complete snapshots
+     *
+     * @return The number of snapshots decoded, or -1 if the server closed the connection
+     */
+    public int receive() throws IOException {
+        int read = channel.read(in);
+        if (read < 0) {
+            return -1;
+        }
+        bytesIn += read;
+
+        in.flip();
+        int decoded = 0;
+        int size;
+
+        while ((size = Protocol.frameSize(in)) > 0) {
+            int end = in.position() + size;
+            in.position(in.position() + 4);
+
+            if (in.get() == Protocol.SNAPSHOT) {
+                decodeSnapshot(in);
+                decoded++;
+            }
+
+            in.position(end);
+        }
+
+        in.compact();
+        return decoded;
+    }
+
+    private void decodeSnapshot(ByteBuffer frame) {
+        int tick = frame.getInt(frame.position());
+        int baselineTick = SnapshotCodec.peekBaselineTick(frame);
+        NetSnapshot baseline = baselineTick != 0 ? received[baselineTick % HISTORY] : null;
+
+        // the baseline's slot may be the one this snapshot goes into, so decode into a spare first
+        NetSnapshot into = received[tick % HISTORY];
+        if (into == baseline) {
+            into = new NetSnapshot();
+            received[tick % HISTORY] = into;
+        }
+
+        codec.decode(frame, into, baseline);
+        latest = into;
+
+        if (baselineTick != 0) {
+            deltaSnapshots++;
+        } else {
+            fullSnapshots++;
+        }
+
+        long echo = codec.getLastEchoTime();
+        if (echo != 0) {
+            roundTrips.record(System.nanoTime() - echo);
+        }
+    }
+
+    /**
+     * Get the latest snapshot
+     *
+     * @return The latest snapshot, null if none has arrived yet
+     */
+    public NetSnapshot getLatest() {
+        return latest;
+    }
+
+    /**
+     * Get the round trip times measured so far, from sending an input to receiving the first snapshot
+     * taken after the server had it
+     *
+     * @return The round trip times (ns)
+     */
+    public Histogram getRoundTrips() {
+        return roundTrips;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public long getFullSnapshots() {
+        return fullSnapshots;
+    }
+
+    public long getDeltaSnapshots() {
+        return deltaSnapshots;
+    }
+
+    /**
+     * Close the connection
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+}
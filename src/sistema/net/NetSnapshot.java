@@ -0,0 +1,119 @@
+package sistema.net;
+
+import java.util.Arrays;
+
+/**
+ * The state of a game as sent over the network: the entities by network id with their kind and
+ * quantized position, plus the bits of game state a client needs to show. Entities are kept sorted by
+ * id, so two snapshots can be compared in one merge pass.
+ */
+public class NetSnapshot {
+
+    /** The tick the snapshot was taken at */
+    int tick;
+
+    /** The entities, sorted by id */
+    int[] ids = new int[64];
+    byte[] kinds = new byte[64];
+    int[] xs = new int[64];
+    int[] ys = new int[64];
+    int count;
+
+    /** The game state */
+    boolean waiting;
+    int alienCount;
+    int score;
+    String message = "";
+
+    /**
+     * Add an entity, ids must be added in ascending order
+     */
+    void add(int id, byte kind, int x, int y) {
+        if (count == ids.length) {
+            int capacity = count * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+        }
+
+        ids[count] = id;
+        kinds[count] = kind;
+        xs[count] = x;
+        ys[count] = y;
+        count++;
+    }
+
+    void clear() {
+        count = 0;
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    /**
+     * Get the number of entities
+     *
+     * @return The number of entities
+     */
+    public int size() {
+        return count;
+    }
+
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    public byte getKind(int index) {
+        return kinds[index];
+    }
+
+    /**
+     * Get the x location of an entity
+     *
+     * @param index The index of the entity
+     * @return The location in pixels
+     */
+    public double getX(int index) {
+        return (double) xs[index] / Protocol.POSITION_SCALE;
+    }
+
+    public double getY(int index) {
+        return (double) ys[index] / Protocol.POSITION_SCALE;
+    }
+
+    public boolean isWaitingForKeyPress() {
+        return waiting;
+    }
+
+    public int getAlienCount() {
+        return alienCount;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Check whether this snapshot holds exactly the same state as another
+     *
+     * @param other The other snapshot
+     * @return True if both hold the same entities and game state
+     */
+    public boolean sameState(NetSnapshot other) {
+        return count == other.count
+                && waiting == other.waiting
+                && alienCount == other.alienCount
+                && score == other.score
+                && message.equals(other.message)
+                && Arrays.equals(ids, 0, count, other.ids, 0, count)
+                && Arrays.equals(kinds, 0, count, other.kinds, 0, count)
+                && Arrays.equals(xs, 0, count, other.xs, 0, count)
+                && Arrays.equals(ys, 0, count, other.ys, 0, count);
+    }
+}
@@ -0,0 +1,103 @@
+package sistema.net;
+
+import sistema.replay.InputRecorder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The wire format shared by the {@link Server} and its clients. Everything travels over TCP in
+ * frames of an int length followed by a type byte and the payload.
+ *
+ * A client sends an {@link #INPUT} frame every tick it has input for:
+ * <pre>
+ *     int   the tick of the last snapshot it received, 0 for none
+ *     long  its clock when it sent the input, echoed back to measure the latency
+ *     byte  the input state bits, as in {@link sistema.Simulation#getInputState()}
+ * </pre>
+ * The server sends a {@link #SNAPSHOT} frame at a fixed rate, encoded by {@link SnapshotCodec}.
+ */
+public final class Protocol {
+
+    /** The frame type of a client's input */
+    public static final byte INPUT = 1;
+
+    /** The frame type of a snapshot of the game */
+    public static final byte SNAPSHOT = 2;
+
+    /** The size of the length and type at the start of every frame */
+    public static final int HEADER = 5;
+
+    /** The largest frame either side accepts */
+    public static final int MAX_FRAME = 1 << 16;
+
+    /** The size of an input frame */
+    public static final int INPUT_FRAME = HEADER + 4 + 8 + 1;
+
+    /** Positions are sent as fixed point numbers with this many steps per pixel */
+    public static final int POSITION_SCALE = 4;
+
+    /** The entity kinds in a snapshot */
+    public static final byte SHIP = 0;
+    public static final byte ALIEN = 1;
+    public static final byte SHOT = 2;
+
+    private Protocol() {}
+
+    /**
+     * Write an input frame
+     *
+     * @param buffer The buffer to write to
+     * @param ackTick The tick of the last snapshot received
+     * @param clientTime The client's clock (ns)
+     * @param state The input state bits
+     */
+    public static void writeInput(ByteBuffer buffer, int ackTick, long clientTime, int state) {
+        buffer.putInt(INPUT_FRAME - 4);
+        buffer.put(INPUT);
+        buffer.putInt(ackTick);
+        buffer.putLong(clientTime);
+        buffer.put((byte) state);
+    }
+
+    /**
+     * Check whether a complete frame is waiting at the buffer's position
+     *
+     * @param buffer The buffer, flipped for reading
+     * @return The size of the frame including its header, or 0 if it hasn't all arrived yet
+     * @throws IllegalStateException Indicates the frame is bigger than {@link #MAX_FRAME}
+     */
+    public static int frameSize(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            return 0;
+        }
+
+        int length = buffer.getInt(buffer.position());
+        if (length < 1 || length > MAX_FRAME) {
+            throw new IllegalStateException("Bad frame length " + length);
+        }
+
+        return buffer.remaining() >= length + 4 ? length + 4 : 0;
+    }
+
+    static void writeZigZag(ByteBuffer buffer, int value) {
+        InputRecorder.writeVarint(buffer, (value << 1) ^ (value >> 31));
+    }
+
+    static int readZigZag(ByteBuffer buffer) {
+        int value = InputRecorder.readVarint(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        InputRecorder.writeVarint(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[InputRecorder.readVarint(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
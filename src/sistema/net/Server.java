@@ -0,0 +1,344 @@
+package sistema.net;
+
+import sistema.SpriteStore;
+import sistema.metrics.Histogram;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Runs games for networked players. Every client that connects gets its own authoritative
+ * {@link sistema.Simulation}, ticked on the server at a fixed rate with the input the client last sent,
+ * and is sent a snapshot of it at a lower fixed rate, as the difference from the last snapshot it
+ * acknowledged (see {@link SnapshotCodec}).
+ *
+ * Everything runs on one thread around an NIO selector, so a session costs a socket and a simulation
+ * rather than a thread, and hundreds fit on one node. Once a second the number of sessions, the time
+ * taken to tick them all and the bandwidth used are printed.
+ *
+ * Configured with -Dnet.port (default 7777), -Dnet.tickrate (default 60) and -Dnet.snapshotrate
+ * (default 20).
+ */
+public class Server implements Runnable {
+
+    /** Stop sending snapshots to a client that has fallen this far behind reading them (bytes) */
+    private static final int BACKLOG_LIMIT = Protocol.MAX_FRAME / 2;
+
+    /** The socket clients connect to */
+    private final ServerSocketChannel serverChannel;
+
+    /** The selector every socket is registered with */
+    private final Selector selector;
+
+    /** The number of ticks per second, and the number of ticks between snapshots */
+    private final int tickRate;
+    private final int snapshotInterval;
+
+    /** The connected clients */
+    private final ArrayList<Session> sessions = new ArrayList<>();
+
+    /** The codec snapshots are encoded with, shared since it's only used on the server thread */
+    private final SnapshotCodec codec = new SnapshotCodec();
+
+    /** The time taken to tick every session, and to snapshot them (ns) */
+    private final Histogram tickTimes = new Histogram();
+    private final Histogram snapshotTimes = new Histogram();
+
+    /** The number of ticks run so far, the first one being 1 so 0 can mean "none" on the wire */
+    private int tick = 0;
+
+    /** Traffic of the sessions that have gone, so the totals don't drop when a client leaves */
+    private long closedBytesIn = 0;
+    private long closedBytesOut = 0;
+
+    /** Snapshots sent in full and as differences */
+    private long fullSnapshots = 0;
+    private long deltaSnapshots = 0;
+
+    /** True while the server should keep running */
+    private volatile boolean running = true;
+
+    /**
+     * Create a server listening on a port
+     *
+     * @param port The port to listen on, 0 for any free one
+     * @param tickRate The number of ticks per second
+     * @param snapshotRate The number of snapshots sent to each client per second
+     */
+    public Server(int port, int tickRate, int snapshotRate) throws IOException {
+        this.tickRate = tickRate;
+        this.snapshotInterval = Math.max(1, tickRate / snapshotRate);
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 256);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Get the port the server is listening on
+     *
+     * @return The port
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Ask the server to stop, it closes every connection on the way out
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Run the server until {@link #stop()} is called
+     */
+    @Override
+    public void run() {
+        long tickLength = 1000000000L / tickRate;
+        long nextTick = System.nanoTime();
+        long nextReport = nextTick + 1000000000L;
+        Report last = new Report();
+
+        try {
+            while (running) {
+                // handle the network until the next tick is due
+                long wait = nextTick - System.nanoTime();
+                if (wait > 1000000) {
+                    selector.select(wait / 1000000);
+                } else {
+                    selector.selectNow();
+                }
+                handleKeys();
+
+                long now = System.nanoTime();
+                if (now < nextTick) {
+                    continue;
+                }
+
+                // don't try to catch up on more than a second of ticks if the server has stalled
+                nextTick = Math.max(nextTick + tickLength, now - 1000000000L);
+                tick();
+
+                if (now >= nextReport) {
+                    nextReport += 1000000000L;
+                    last = report(last);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Server failed: " + e.getMessage());
+        } finally {
+            for (Session session : sessions) {
+                closeQuietly(session.channel);
+            }
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+        }
+    }
+
+    private void handleKeys() throws IOException {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+
+            if (!key.isValid()) {
+                continue;
+            }
+
+            if (key.isAcceptable()) {
+                accept();
+                continue;
+            }
+
+            Session session = (Session) key.attachment();
+            try {
+                if (key.isReadable()) {
+                    read(key, session);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    session.flush(key);
+                }
+            } catch (IOException | RuntimeException e) {
+                // a broken connection or a garbled frame only loses that client
+                close(key, session);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            Session session = new Session(channel);
+            channel.register(selector, SelectionKey.OP_READ, session);
+            sessions.add(session);
+        }
+    }
+
+    private void read(SelectionKey key, Session session) throws IOException {
+        int read = session.channel.read(session.in);
+        if (read < 0) {
+            close(key, session);
+            return;
+        }
+        session.bytesIn += read;
+
+        ByteBuffer in = session.in;
+        in.flip();
+
+        // a client only ever sends input frames, so anything else is garbled, and a longer frame could
+        // never fit in the buffer anyway: the session is closed rather than waiting for the rest of it
+        while (in.remaining() >= Protocol.HEADER) {
+            if (in.getInt(in.position()) != Protocol.INPUT_FRAME - 4 || in.get(in.position() + 4) != Protocol.INPUT) {
+                throw new IllegalStateException("Bad frame from client");
+            }
+            if (in.remaining() < Protocol.INPUT_FRAME) {
+                break;
+            }
+
+            in.position(in.position() + Protocol.HEADER);
+            session.onInput(in);
+        }
+
+        in.compact();
+    }
+
+    private void tick() {
+        tick++;
+        double delta = 1000.0 / tickRate;
+
+        // a session whose game fails only loses that client, walking backwards so it can be closed
+        long start = System.nanoTime();
+        for (int i = sessions.size() - 1; i >= 0; i--) {
+            Session session = sessions.get(i);
+            try {
+                session.tick(delta);
+            } catch (RuntimeException e) {
+                close(session.channel.keyFor(selector), session);
+            }
+        }
+        tickTimes.record(System.nanoTime() - start);
+
+        if (tick % snapshotInterval != 0) {
+            return;
+        }
+
+        start = System.nanoTime();
+        for (int i = sessions.size() - 1; i >= 0; i--) {
+            Session session = sessions.get(i);
+            SelectionKey key = session.channel.keyFor(selector);
+
+            // a client that can't keep up just misses snapshots until it drains, its next one is a
+            // difference from whatever it acknowledged last so nothing is lost
+            if (session.out.position() > BACKLOG_LIMIT) {
+                continue;
+            }
+
+            // a snapshot that can't be encoded, e.g. one too big for the output buffer, only loses that
+            // client, the same as a broken connection
+            try {
+                if (session.queueSnapshot(tick, codec)) {
+                    deltaSnapshots++;
+                } else {
+                    fullSnapshots++;
+                }
+
+                session.flush(key);
+            } catch (IOException | RuntimeException e) {
+                close(key, session);
+            }
+        }
+        snapshotTimes.record(System.nanoTime() - start);
+    }
+
+    private void close(SelectionKey key, Session session) {
+        key.cancel();
+        closeQuietly(session.channel);
+
+        if (sessions.remove(session)) {
+            closedBytesIn += session.bytesIn;
+            closedBytesOut += session.bytesOut;
+        }
+    }
+
+    private Report report(Report last) {
+        Report report = new Report();
+        report.bytesIn = closedBytesIn;
+        report.bytesOut = closedBytesOut;
+        for (Session session : sessions) {
+            report.bytesIn += session.bytesIn;
+            report.bytesOut += session.bytesOut;
+        }
+        report.full = fullSnapshots;
+        report.delta = deltaSnapshots;
+        report.ticks = tickTimes.snapshot();
+        report.snapshots = snapshotTimes.snapshot();
+
+        Histogram ticks = report.ticks.since(last.ticks);
+        Histogram snapshots = report.snapshots.since(last.snapshots);
+        long out = report.bytesOut - last.bytesOut;
+        int count = sessions.size();
+
+        System.out.printf(
+                "sessions %d | tick p50 %.2f ms p99 %.2f ms max %.2f ms | snapshot p99 %.2f ms | in %.1f KB/s out %.1f KB/s (%.0f B/s per session) | %d full %d delta%n",
+                count,
+                ticks.getPercentile(50) / 1e6, ticks.getPercentile(99) / 1e6, ticks.getMax() / 1e6,
+                snapshots.getPercentile(99) / 1e6,
+                (report.bytesIn - last.bytesIn) / 1024.0, out / 1024.0,
+                count > 0 ? (double) out / count : 0.0,
+                report.full - last.full, report.delta - last.delta
+        );
+
+        return report;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // nothing more to be done with it
+        }
+    }
+
+    /**
+     * The running totals at the time of a report, to work out the rates from
+     */
+    private static class Report {
+        long bytesIn;
+        long bytesOut;
+        long full;
+        long delta;
+        Histogram ticks = new Histogram();
+        Histogram snapshots = new Histogram();
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        SpriteStore.get().preloadManifest("sprites/manifest.txt").join();
+
+        Server server = new Server(
+                Integer.getInteger("net.port", 7777),
+                Integer.getInteger("net.tickrate", 60),
+                Integer.getInteger("net.snapshotrate", 20)
+        );
+
+        System.out.println("Listening on port " + server.getPort());
+        server.run();
+    }
+}
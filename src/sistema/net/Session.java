@@ -0,0 +1,171 @@
+package sistema.net;
+
+import sistema.Simulation;
+import sistema.entities.AlienEntity;
+import sistema.entities.Entity;
+import sistema.entities.ShipEntity;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * One client's game on the {@link Server}: its connection, its own authoritative {@link Simulation},
+ * the input it sent last, and the snapshots sent to it recently so new ones can be sent as the
+ * difference from whichever one it acknowledged.
+ */
+class Session {
+
+    /** The number of snapshots kept to serve as baselines, comfortably more than are in flight */
+    private static final int HISTORY = 32;
+
+    /** The connection to the client */
+    final SocketChannel channel;
+
+    /** The game */
+    final Simulation simulation = new Simulation();
+
+    /** Bytes read from the client but not yet parsed, and bytes waiting to be written to it */
+    final ByteBuffer in = ByteBuffer.allocate(4096);
+    final ByteBuffer out = ByteBuffer.allocate(Protocol.MAX_FRAME);
+
+    /** The latest input state received, without the start bit */
+    private int input = 0;
+
+    /** True if the client asked for a new game */
+    private boolean startRequested = false;
+
+    /** The tick of the last snapshot the client received, and the client clock of its last input */
+    private int ackTick = 0;
+    private long echoTime = 0;
+
+    /** The snapshots sent recently, by tick modulo {@link #HISTORY} */
+    private final NetSnapshot[] sent = new NetSnapshot[HISTORY];
+
+    /** The entities of a snapshot being captured, as id and list index packed into a long so they sort by id */
+    private long[] order = new long[64];
+
+    /** Traffic counters */
+    long bytesIn = 0;
+    long bytesOut = 0;
+
+    Session(SocketChannel channel) {
+        this.channel = channel;
+
+        for (int i = 0; i < HISTORY; i++) {
+            sent[i] = new NetSnapshot();
+        }
+    }
+
+    /**
+     * Handle an input frame from the client
+     *
+     * @param frame The payload of the frame
+     */
+    void onInput(ByteBuffer frame) {
+        ackTick = frame.getInt();
+        echoTime = frame.getLong();
+        int state = frame.get();
+
+        // the start bit is only acted on once, while the game is waiting for it
+        if ((state & Simulation.INPUT_START) != 0 && simulation.isWaitingForKeyPress()) {
+            startRequested = true;
+        }
+        input = state & ~Simulation.INPUT_START;
+    }
+
+    /**
+     * Advance the game by one tick with the latest input
+     *
+     * @param delta The length of the tick in milliseconds
+     */
+    void tick(double delta) {
+        if (startRequested) {
+            simulation.startGame();
+            startRequested = false;
+        }
+
+        simulation.applyInputState(input);
+        simulation.tick(delta);
+    }
+
+    /**
+     * Capture the game and queue a snapshot of it, as the difference from the last snapshot the client
+     * acknowledged if that one is still around
+     *
+     * @param tick The current tick, must be above 0
+     * @param codec The codec to encode with
+     * @return True if the snapshot was sent as a difference, false if in full
+     */
+    boolean queueSnapshot(int tick, SnapshotCodec codec) {
+        NetSnapshot snapshot = sent[tick % HISTORY];
+        capture(tick, snapshot);
+
+        NetSnapshot baseline = ackTick != 0 ? sent[ackTick % HISTORY] : null;
+        if (baseline != null && baseline.tick != ackTick) {
+            baseline = null;
+        }
+
+        codec.encode(out, snapshot, baseline, echoTime);
+        return baseline != null;
+    }
+
+    /**
+     * Write as much of the queued output as the socket takes
+     *
+     * @param key The session's selection key, to ask to be told when the socket can take more
+     */
+    void flush(SelectionKey key) throws IOException {
+        out.flip();
+        bytesOut += channel.write(out);
+        out.compact();
+
+        key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    /**
+     * Fill a snapshot with the current state of the game. An entity's network id is its spawn id, so a
+     * pooled shot that's fired again goes out as a new entity rather than the old one moving
+     */
+    private void capture(int tick, NetSnapshot snapshot) {
+        ArrayList<Entity> entities = simulation.getEntities();
+        int size = entities.size();
+
+        if (order.length < size) {
+            order = new long[size * 2];
+        }
+
+        for (int i = 0; i < size; i++) {
+            order[i] = ((long) entities.get(i).getSpawnId() << 32) | i;
+        }
+
+        Arrays.sort(order, 0, size);
+
+        snapshot.clear();
+        snapshot.tick = tick;
+        for (int i = 0; i < size; i++) {
+            Entity entity = entities.get((int) order[i]);
+            snapshot.add(
+                    (int) (order[i] >>> 32),
+                    kind(entity),
+                    (int) Math.round(entity.getX() * Protocol.POSITION_SCALE),
+                    (int) Math.round(entity.getY() * Protocol.POSITION_SCALE)
+            );
+        }
+
+        snapshot.waiting = simulation.isWaitingForKeyPress();
+        snapshot.alienCount = simulation.getAlienCount();
+        snapshot.score = simulation.getScore();
+        snapshot.message = snapshot.waiting ? simulation.getMessage() : "";
+    }
+
+    private static byte kind(Entity entity) {
+        if (entity instanceof ShipEntity) {
+            return Protocol.SHIP;
+        }
+        return entity instanceof AlienEntity ? Protocol.ALIEN : Protocol.SHOT;
+    }
+}
@@ -0,0 +1,235 @@
+package sistema.net;
+
+import sistema.replay.InputRecorder;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Encodes snapshots as the difference from an earlier snapshot the client is known to have, its
+ * baseline. Only entities that appeared, moved or went away are sent, moves as the change in quantized
+ * position, and every number goes out as a varint, so the aliens marching across the screen cost a few
+ * bytes each. Without a baseline the whole snapshot is sent, as the difference from an empty one.
+ *
+ * The payload of a snapshot frame is
+ * <pre>
+ *     int     the tick of the snapshot
+ *     int     the tick of the baseline, 0 for none
+ *     long    the client clock of the last input received, echoed back
+ *     byte    flags, 1 if the game is waiting for a key press
+ *     varint  the number of aliens left
+ *     varint  the score
+ *     string  the message, only if waiting
+ *     varint  the number of entities removed, followed by their ids as ascending deltas
+ *     varint  the number of entities added or moved, each one as
+ *             varint id as an ascending delta, byte 0 if moved or kind + 1 if added,
+ *             zigzag x and y, relative to the baseline if moved
+ * </pre>
+ * A codec keeps scratch space between calls, so each side should use its own.
+ */
+public class SnapshotCodec {
+
+    /** The ids removed since the baseline */
+    private int[] removed = new int[64];
+
+    /** The indices into the current snapshot of the entities added or moved, and the baseline index of the moved ones, -1 if added */
+    private int[] changed = new int[64];
+    private int[] changedFrom = new int[64];
+
+    /** The header fields of the last snapshot decoded */
+    private int lastBaselineTick;
+    private long lastEchoTime;
+
+    /**
+     * Write a snapshot frame
+     *
+     * @param out The buffer to write the frame to
+     * @param current The snapshot to send
+     * @param baseline The snapshot the client is known to have, null to send the whole snapshot
+     * @param echoTime The client clock of the last input received
+     */
+    public void encode(ByteBuffer out, NetSnapshot current, NetSnapshot baseline, long echoTime) {
+        int start = out.position();
+        out.putInt(0);
+        out.put(Protocol.SNAPSHOT);
+
+        out.putInt(current.tick);
+        out.putInt(baseline != null ? baseline.tick : 0);
+        out.putLong(echoTime);
+        out.put((byte) (current.waiting ? 1 : 0));
+        InputRecorder.writeVarint(out, current.alienCount);
+        InputRecorder.writeVarint(out, current.score);
+        if (current.waiting) {
+            Protocol.writeString(out, current.message);
+        }
+
+        // merge the two sorted entity lists to find what went away, what's new and what moved
+        int removedCount = 0;
+        int changedCount = 0;
+        int baseCount = baseline != null ? baseline.count : 0;
+        int b = 0;
+        int c = 0;
+
+        ensureCapacity(baseCount + current.count);
+
+        while (b < baseCount || c < current.count) {
+            int baseId = b < baseCount ? baseline.ids[b] : Integer.MAX_VALUE;
+            int currentId = c < current.count ? current.ids[c] : Integer.MAX_VALUE;
+
+            if (baseId < currentId) {
+                removed[removedCount++] = baseId;
+                b++;
+            } else if (currentId < baseId) {
+                changed[changedCount] = c;
+                changedFrom[changedCount++] = -1;
+                c++;
+            } else {
+                if (baseline.xs[b] != current.xs[c] || baseline.ys[b] != current.ys[c]
+                        || baseline.kinds[b] != current.kinds[c]) {
+                    changed[changedCount] = c;
+                    changedFrom[changedCount++] = baseline.kinds[b] == current.kinds[c] ? b : -1;
+                }
+                b++;
+                c++;
+            }
+        }
+
+        InputRecorder.writeVarint(out, removedCount);
+        int previous = 0;
+        for (int i = 0; i < removedCount; i++) {
+            InputRecorder.writeVarint(out, removed[i] - previous);
+            previous = removed[i];
+        }
+
+        InputRecorder.writeVarint(out, changedCount);
+        previous = 0;
+        for (int i = 0; i < changedCount; i++) {
+            int index = changed[i];
+            int from = changedFrom[i];
+
+            InputRecorder.writeVarint(out, current.ids[index] - previous);
+            previous = current.ids[index];
+
+            if (from >= 0) {
+                out.put((byte) 0);
+                Protocol.writeZigZag(out, current.xs[index] - baseline.xs[from]);
+                Protocol.writeZigZag(out, current.ys[index] - baseline.ys[from]);
+            } else {
+                out.put((byte) (current.kinds[index] + 1));
+                Protocol.writeZigZag(out, current.xs[index]);
+                Protocol.writeZigZag(out, current.ys[index]);
+            }
+        }
+
+        out.putInt(start, out.position() - start - 4);
+    }
+
+    /**
+     * Read the payload of a snapshot frame, i.e. everything after the type byte
+     *
+     * @param in The buffer positioned at the payload
+     * @param into The snapshot to decode into
+     * @param baseline The snapshot whose tick is {@link #peekBaselineTick(ByteBuffer)}, null if that's 0
+     */
+    public void decode(ByteBuffer in, NetSnapshot into, NetSnapshot baseline) {
+        into.clear();
+        into.tick = in.getInt();
+        lastBaselineTick = in.getInt();
+        lastEchoTime = in.getLong();
+        into.waiting = (in.get() & 1) != 0;
+        into.alienCount = InputRecorder.readVarint(in);
+        into.score = InputRecorder.readVarint(in);
+        into.message = into.waiting ? Protocol.readString(in) : "";
+
+        if (lastBaselineTick != 0 && (baseline == null || baseline.tick != lastBaselineTick)) {
+            throw new IllegalStateException("Missing baseline " + lastBaselineTick + " for snapshot " + into.tick);
+        }
+
+        int removedCount = InputRecorder.readVarint(in);
+        ensureCapacity(removedCount);
+        int previous = 0;
+        for (int i = 0; i < removedCount; i++) {
+            previous += InputRecorder.readVarint(in);
+            removed[i] = previous;
+        }
+
+        // merge the baseline, the removals and the changes, all three are sorted by id
+        int changedCount = InputRecorder.readVarint(in);
+        int baseCount = baseline != null && lastBaselineTick != 0 ? baseline.count : 0;
+        int b = 0;
+        int r = 0;
+        int changedId = 0;
+
+        for (int i = 0; i <= changedCount; i++) {
+            int id = Integer.MAX_VALUE;
+            if (i < changedCount) {
+                changedId += InputRecorder.readVarint(in);
+                id = changedId;
+            }
+
+            // copy across the untouched baseline entities before this one
+            while (b < baseCount && baseline.ids[b] < id) {
+                while (r < removedCount && removed[r] < baseline.ids[b]) {
+                    r++;
+                }
+                if (r >= removedCount || removed[r] != baseline.ids[b]) {
+                    into.add(baseline.ids[b], baseline.kinds[b], baseline.xs[b], baseline.ys[b]);
+                }
+                b++;
+            }
+
+            if (i == changedCount) {
+                break;
+            }
+
+            int tag = in.get();
+            int x = Protocol.readZigZag(in);
+            int y = Protocol.readZigZag(in);
+
+            if (tag == 0) {
+                if (b >= baseCount || baseline.ids[b] != id) {
+                    throw new IllegalStateException("Moved entity " + id + " isn't in the baseline");
+                }
+                into.add(id, baseline.kinds[b], baseline.xs[b] + x, baseline.ys[b] + y);
+            } else {
+                into.add(id, (byte) (tag - 1), x, y);
+            }
+
+            // a changed entity replaces its baseline entry, if it had one
+            if (b < baseCount && baseline.ids[b] == id) {
+                b++;
+            }
+        }
+    }
+
+    /**
+     * Look at the baseline tick of a snapshot payload without reading it
+     *
+     * @param in The buffer positioned at the payload
+     * @return The tick of the baseline, 0 for none
+     */
+    public static int peekBaselineTick(ByteBuffer in) {
+        return in.getInt(in.position() + 4);
+    }
+
+    /**
+     * Get the client clock echoed back in the last snapshot decoded
+     *
+     * @return The client clock (ns)
+     */
+    public long getLastEchoTime() {
+        return lastEchoTime;
+    }
+
+    public int getLastBaselineTick() {
+        return lastBaselineTick;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (removed.length < capacity) {
+            removed = Arrays.copyOf(removed, capacity * 2);
+            changed = Arrays.copyOf(changed, capacity * 2);
+            changedFrom = Arrays.copyOf(changedFrom, capacity * 2);
+        }
+    }
+}
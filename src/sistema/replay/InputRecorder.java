@@ -0,0 +1,155 @@
+package sistema.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records the player's input of every tick to a compact binary log, so the game can be replayed
+ * exactly by an {@link InputReplayer}. Recording must start on a fresh simulation running at a fixed
+ * tick rate, since the log holds nothing but the inputs. Recording and closing are synchronized,
+ * so the log can be closed from a shutdown hook while the simulation is still ticking.
+ *
+ * The log starts with a header: the magic number, the format version, the seed of the random
+ * number generator and the tick rate. The input is then written as runs, each a varint holding the
+ * number of ticks followed by the input state byte those ticks had. The input rarely changes from
+ * one tick to the next, so a long game takes a few bytes per key press.
+ */
+public class InputRecorder implements Closeable {
+
+    /** The magic number at the start of every log, "SIRP" */
+    static final int MAGIC = 0x53495250;
+
+    /** The version of the log format */
+    static final int VERSION = 1;
+
+    /** The channel the log is written to */
+    private final FileChannel channel;
+
+    /** The buffer runs are collected in before being written */
+    private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+    /** The input state of the current run, -1 before the first tick */
+    private int state = -1;
+
+    /** The number of ticks in the current run */
+    private int run = 0;
+
+    /**
+     * Start recording to a file, replacing it if it exists
+     *
+     * @param file The file to record to
+     * @param seed The seed of the simulation's random number generator
+     * @param tickRate The number of ticks per second the simulation runs at
+     * @throws IOException Indicates a failure to create the file
+     */
+    public InputRecorder(Path file, long seed, int tickRate) throws IOException {
+        channel = FileChannel.open(
+                file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING
+        );
+
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(seed);
+        buffer.putInt(tickRate);
+    }
+
+    /**
+     * Record the input of a tick
+     *
+     * @param input The input state of the tick
+     */
+    public synchronized void record(int input) {
+        if (input == state) {
+            run++;
+            return;
+        }
+
+        flushRun();
+        state = input;
+        run = 1;
+    }
+
+    /**
+     * Write out what's left of the log and close the file
+     *
+     * @throws IOException Indicates a failure to write the log
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        flushRun();
+        drain();
+        channel.close();
+    }
+
+    /**
+     * Move the current run into the buffer, writing the buffer out first if it's nearly full
+     */
+    private void flushRun() {
+        if (run == 0) {
+            return;
+        }
+
+        try {
+            // a run takes at most 5 bytes of varint plus the state byte
+            if (buffer.remaining() < 6) {
+                drain();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        writeVarint(buffer, run);
+        buffer.put((byte) state);
+        run = 0;
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Write a non-negative int as a varint, seven bits per byte, low bits first
+     *
+     * @param buffer The buffer to write to
+     * @param value The value to write
+     */
+    public static void writeVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Read a varint written by {@link #writeVarint(ByteBuffer, int)}
+     *
+     * @param buffer The buffer to read from
+     * @return The value read
+     */
+    public static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return value;
+    }
+}
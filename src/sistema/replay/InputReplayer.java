@@ -0,0 +1,122 @@
+package sistema.replay;
+
+import sistema.FramePacer;
+import sistema.Simulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Plays back a log written by an {@link InputRecorder}, feeding the recorded input into a
+ * simulation one tick at a time. Since the simulation only depends on its input, the seed and the
+ * tick length, it goes through exactly the same states it did when it was recorded.
+ */
+public class InputReplayer {
+
+    /** The log, positioned after the header */
+    private final ByteBuffer log;
+
+    /** The seed the recorded simulation was running with */
+    private final long seed;
+
+    /** The tick rate the recorded simulation was running at */
+    private final int tickRate;
+
+    /** The input state of the current run */
+    private int state;
+
+    /** The number of ticks left in the current run */
+    private int run = 0;
+
+    /**
+     * Load a log
+     *
+     * @param file The file holding the log
+     * @throws IOException Indicates a failure to read the file or a file that isn't a log
+     */
+    public InputReplayer(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            log = ByteBuffer.allocate((int) channel.size());
+            while (log.hasRemaining() && channel.read(log) != -1) {
+                // keep reading until the whole log is in
+            }
+            log.flip();
+        }
+
+        if (log.remaining() < 20 || log.getInt() != InputRecorder.MAGIC) {
+            throw new IOException("Not an input log: " + file);
+        }
+        if (log.getInt() != InputRecorder.VERSION) {
+            throw new IOException("Unsupported input log version: " + file);
+        }
+
+        seed = log.getLong();
+        tickRate = log.getInt();
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    /**
+     * Check if there are any recorded ticks left
+     *
+     * @return True if there is at least one more tick
+     */
+    public boolean hasNext() {
+        return run > 0 || log.hasRemaining();
+    }
+
+    /**
+     * Get the input state of the next tick
+     *
+     * @return The input state
+     */
+    public int next() {
+        if (run == 0) {
+            run = InputRecorder.readVarint(log);
+            state = log.get();
+        }
+
+        run--;
+        return state;
+    }
+
+    /**
+     * Apply the input of the next tick to a simulation and advance it by that tick
+     *
+     * @param simulation The simulation to advance
+     */
+    public void step(Simulation simulation) {
+        simulation.applyInputState(next());
+        simulation.tick(1000.0 / tickRate);
+    }
+
+    /**
+     * Play the whole log into a fresh simulation
+     *
+     * @param simulation The simulation to play into, freshly created
+     * @param realTime True to play at the recorded tick rate, false to play as fast as possible
+     * @return The number of ticks played
+     */
+    public int play(Simulation simulation, boolean realTime) {
+        simulation.setSeed(seed);
+        FramePacer pacer = new FramePacer(realTime ? tickRate : 0);
+        int ticks = 0;
+
+        while (hasNext()) {
+            step(simulation);
+            pacer.waitForNextFrame();
+            ticks++;
+        }
+
+        return ticks;
+    }
+}
@@ -0,0 +1,66 @@
+package sistema.replay;
+
+import sistema.Simulation;
+import sistema.entities.Entity;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Replays an input log headless and prints a summary of the state the game ended in, including a
+ * hash of every entity's position. Two runs of the same log must print the same line, which makes
+ * it usable for "golden run" regression checks.
+ *
+ * Usage: Replay &lt;log&gt; [--realtime]
+ */
+public class Replay {
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        if (args.length == 0) {
+            System.err.println("Usage: Replay <log> [--realtime]");
+            System.exit(1);
+        }
+
+        InputReplayer replayer = new InputReplayer(Paths.get(args[0]));
+        Simulation simulation = new Simulation();
+        boolean realTime = args.length > 1 && args[1].equals("--realtime");
+
+        long start = System.nanoTime();
+        int ticks = replayer.play(simulation, realTime);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf(
+                "ticks=%d aliens=%d entities=%d waiting=%b hash=%016x%n",
+                ticks,
+                simulation.getAlienCount(),
+                simulation.getEntities().size(),
+                simulation.isWaitingForKeyPress(),
+                hash(simulation.getEntities())
+        );
+        System.out.printf("replayed in %.1f ms%n", elapsed / 1e6);
+    }
+
+    /**
+     * Hash the positions and speeds of a list of entities
+     *
+     * @param entities The entities to hash
+     * @return The hash
+     */
+    public static long hash(List<Entity> entities) {
+        long hash = 1125899906842597L;
+
+        for (int i = 0; i < entities.size(); i++) {
+            Entity entity = entities.get(i);
+
+            hash = 31 * hash + Double.doubleToLongBits(entity.getX());
+            hash = 31 * hash + Double.doubleToLongBits(entity.getY());
+            hash = 31 * hash + Double.doubleToLongBits(entity.getsetHorizontalMovement());
+            hash = 31 * hash + Double.doubleToLongBits(entity.getVerticalMovement());
+        }
+
+        return hash;
+    }
+}